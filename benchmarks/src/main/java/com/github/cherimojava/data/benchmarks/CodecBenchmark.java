@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.cherimojava.data.benchmarks.Model.Order;
+import com.github.cherimojava.data.benchmarks.Model.Person;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+
+/**
+ * Benchmarks encoding entities to and decoding them from BSON through EntityCodec. Person is a flat entity with one
+ * embedded entity, Order holds references and a list of embedded entities. Encoding and decoding a Document holding
+ * the same data as Person serves as baseline
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CodecBenchmark {
+	private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+	private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+	private Codec<Person> personCodec;
+	private Codec<Order> orderCodec;
+	private Codec<Document> documentCodec;
+
+	private Person person;
+	private Order order;
+	private Document document;
+
+	private byte[] personBson;
+	private byte[] orderBson;
+	private byte[] documentBson;
+
+	@Setup
+	public void setup() {
+		EntityFactory factory = new EntityFactory(OfflineDatabase.create());
+		personCodec = factory.getCodec(Person.class);
+		orderCodec = factory.getCodec(Order.class);
+		documentCodec = new DocumentCodec();
+
+		person = Model.person(factory);
+		order = Model.order(factory);
+		document = Model.document();
+
+		personBson = toBson(personCodec, person).toByteArray();
+		orderBson = toBson(orderCodec, order).toByteArray();
+		documentBson = toBson(documentCodec, document).toByteArray();
+	}
+
+	@Benchmark
+	public int encodePerson() {
+		return toBson(personCodec, person).getSize();
+	}
+
+	@Benchmark
+	public int encodeOrder() {
+		return toBson(orderCodec, order).getSize();
+	}
+
+	@Benchmark
+	public int encodeDocument() {
+		return toBson(documentCodec, document).getSize();
+	}
+
+	@Benchmark
+	public Person decodePerson() {
+		return fromBson(personCodec, personBson);
+	}
+
+	@Benchmark
+	public Order decodeOrder() {
+		return fromBson(orderCodec, orderBson);
+	}
+
+	@Benchmark
+	public Document decodeDocument() {
+		return fromBson(documentCodec, documentBson);
+	}
+
+	private static <T> BasicOutputBuffer toBson(Codec<T> codec, T value) {
+		BasicOutputBuffer buffer = new BasicOutputBuffer();
+		try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+			codec.encode(writer, value, ENCODER_CONTEXT);
+		}
+		return buffer;
+	}
+
+	private static <T> T fromBson(Codec<T> codec, byte[] bson) {
+		try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bson))) {
+			return codec.decode(reader, DECODER_CONTEXT);
+		}
+	}
+}
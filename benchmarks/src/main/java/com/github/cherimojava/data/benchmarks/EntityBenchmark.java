@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.cherimojava.data.benchmarks.Model.Person;
+import com.github.cherimojava.data.benchmarks.Model.PersonPojo;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+
+/**
+ * Benchmarks the entity runtime, meaning instantiating entities and dispatching getters and setters through the
+ * EntityInvocationHandler. A plain POJO serves as baseline
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EntityBenchmark {
+	private static final String[] names = { "Jane Doe", "John Doe" };
+
+	private EntityFactory factory;
+	private Person person;
+	private PersonPojo pojo;
+	private int counter;
+
+	@Setup
+	public void setup() {
+		factory = new EntityFactory(OfflineDatabase.create());
+		person = Model.person(factory);
+		pojo = Model.personPojo();
+	}
+
+	@Benchmark
+	public Person instantiate() {
+		return EntityFactory.instantiate(Person.class);
+	}
+
+	@Benchmark
+	public Person create() {
+		return factory.create(Person.class);
+	}
+
+	@Benchmark
+	public PersonPojo instantiatePojo() {
+		return new PersonPojo();
+	}
+
+	@Benchmark
+	public String get() {
+		return person.getName();
+	}
+
+	@Benchmark
+	public Object getByName() {
+		return person.get("name");
+	}
+
+	@Benchmark
+	public int getPrimitive() {
+		return person.getAge();
+	}
+
+	@Benchmark
+	public String getEmbedded() {
+		return person.getAddress().getCity();
+	}
+
+	@Benchmark
+	public String getPojo() {
+		return pojo.getName();
+	}
+
+	@Benchmark
+	public Person set() {
+		// alternate values, as setting the current value again is short cut
+		return person.setName(names[counter++ & 1]);
+	}
+
+	@Benchmark
+	public Person setPrimitive() {
+		return person.setAge(counter++);
+	}
+
+	@Benchmark
+	public PersonPojo setPojo() {
+		return pojo.setName(names[counter++ & 1]);
+	}
+}
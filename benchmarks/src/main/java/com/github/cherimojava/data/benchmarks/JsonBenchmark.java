@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.cherimojava.data.benchmarks.Model.Order;
+import com.github.cherimojava.data.benchmarks.Model.Person;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+
+/**
+ * Benchmarks the JSON representation of entities, through toString() and EntityFactory.readEntity. Document.toJson
+ * and Document.parse serve as baseline
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonBenchmark {
+	private EntityFactory factory;
+
+	private Person person;
+	private Order order;
+	private Document document;
+
+	private String personJson;
+	private String documentJson;
+
+	@Setup
+	public void setup() {
+		factory = new EntityFactory(OfflineDatabase.create());
+		person = Model.person(factory);
+		order = Model.order(factory);
+		document = Model.document();
+		personJson = person.toString();
+		documentJson = document.toJson();
+	}
+
+	@Benchmark
+	public String personToString() {
+		return person.toString();
+	}
+
+	@Benchmark
+	public String orderToString() {
+		return order.toString();
+	}
+
+	@Benchmark
+	public String documentToJson() {
+		return document.toJson();
+	}
+
+	@Benchmark
+	public Person readPerson() {
+		return factory.readEntity(Person.class, personJson);
+	}
+
+	@Benchmark
+	public Document parseDocument() {
+		return Document.parse(documentJson);
+	}
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.benchmarks;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.joda.time.DateTime;
+
+import com.github.cherimojava.data.mongo.entity.Entity;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+import com.github.cherimojava.data.mongo.entity.annotation.Id;
+import com.github.cherimojava.data.mongo.entity.annotation.Reference;
+import com.google.common.collect.Lists;
+
+/**
+ * Entities used throughout the benchmarks, along with plain POJOs and documents holding the same data as baseline
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class Model {
+
+	private Model() {
+	}
+
+	public static interface Person extends Entity<Person> {
+		public String getName();
+
+		public Person setName(String name);
+
+		public int getAge();
+
+		public Person setAge(int age);
+
+		public double getScore();
+
+		public Person setScore(double score);
+
+		public boolean getActive();
+
+		public Person setActive(boolean active);
+
+		public DateTime getBirthday();
+
+		public Person setBirthday(DateTime birthday);
+
+		public List<String> getTags();
+
+		public Person setTags(List<String> tags);
+
+		public Address getAddress();
+
+		public Person setAddress(Address address);
+	}
+
+	public static interface Address extends Entity<Address> {
+		public String getStreet();
+
+		public Address setStreet(String street);
+
+		public String getCity();
+
+		public Address setCity(String city);
+
+		public String getZip();
+
+		public Address setZip(String zip);
+	}
+
+	public static interface Order extends Entity<Order> {
+		@Id
+		public String getNumber();
+
+		public Order setNumber(String number);
+
+		public long getTotal();
+
+		public Order setTotal(long total);
+
+		@Reference
+		public Person getCustomer();
+
+		public Order setCustomer(Person customer);
+
+		@Reference
+		public List<Person> getWatchers();
+
+		public Order setWatchers(List<Person> watchers);
+
+		public List<Address> getStops();
+
+		public Order setStops(List<Address> stops);
+	}
+
+	/**
+	 * plain java counterpart of {@link Person}
+	 */
+	public static final class PersonPojo {
+		private String name;
+		private int age;
+		private double score;
+		private boolean active;
+		private DateTime birthday;
+		private List<String> tags;
+		private AddressPojo address;
+
+		public String getName() {
+			return name;
+		}
+
+		public PersonPojo setName(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public int getAge() {
+			return age;
+		}
+
+		public PersonPojo setAge(int age) {
+			this.age = age;
+			return this;
+		}
+
+		public double getScore() {
+			return score;
+		}
+
+		public PersonPojo setScore(double score) {
+			this.score = score;
+			return this;
+		}
+
+		public boolean getActive() {
+			return active;
+		}
+
+		public PersonPojo setActive(boolean active) {
+			this.active = active;
+			return this;
+		}
+
+		public DateTime getBirthday() {
+			return birthday;
+		}
+
+		public PersonPojo setBirthday(DateTime birthday) {
+			this.birthday = birthday;
+			return this;
+		}
+
+		public List<String> getTags() {
+			return tags;
+		}
+
+		public PersonPojo setTags(List<String> tags) {
+			this.tags = tags;
+			return this;
+		}
+
+		public AddressPojo getAddress() {
+			return address;
+		}
+
+		public PersonPojo setAddress(AddressPojo address) {
+			this.address = address;
+			return this;
+		}
+	}
+
+	/**
+	 * plain java counterpart of {@link Address}
+	 */
+	public static final class AddressPojo {
+		private String street;
+		private String city;
+		private String zip;
+
+		public String getStreet() {
+			return street;
+		}
+
+		public AddressPojo setStreet(String street) {
+			this.street = street;
+			return this;
+		}
+
+		public String getCity() {
+			return city;
+		}
+
+		public AddressPojo setCity(String city) {
+			this.city = city;
+			return this;
+		}
+
+		public String getZip() {
+			return zip;
+		}
+
+		public AddressPojo setZip(String zip) {
+			this.zip = zip;
+			return this;
+		}
+	}
+
+	static Person person(EntityFactory factory) {
+		Person person = factory.create(Person.class).setName("Jane Doe").setAge(42).setScore(0.75).setActive(true)
+				.setBirthday(new DateTime(1973, 4, 2, 0, 0)).setTags(Lists.newArrayList("vip", "newsletter"));
+		person.set(Entity.ID, new ObjectId());
+		return person.setAddress(address(factory, "Main Street 1"));
+	}
+
+	static Address address(EntityFactory factory, String street) {
+		return factory.create(Address.class).setStreet(street).setCity("Springfield").setZip("12345");
+	}
+
+	static Order order(EntityFactory factory) {
+		List<Person> watchers = Lists.newArrayList();
+		List<Address> stops = Lists.newArrayList();
+		for (int i = 0; i < 10; i++) {
+			watchers.add(person(factory));
+			stops.add(address(factory, "Side Street " + i));
+		}
+		return factory.create(Order.class).setNumber("o-4711").setTotal(9999).setCustomer(person(factory))
+				.setWatchers(watchers).setStops(stops);
+	}
+
+	static PersonPojo personPojo() {
+		return new PersonPojo().setName("Jane Doe").setAge(42).setScore(0.75).setActive(true).setBirthday(
+				new DateTime(1973, 4, 2, 0, 0)).setTags(Lists.newArrayList("vip", "newsletter")).setAddress(
+				new AddressPojo().setStreet("Main Street 1").setCity("Springfield").setZip("12345"));
+	}
+
+	/**
+	 * document holding the same data as {@link #person(EntityFactory)}
+	 */
+	static Document document() {
+		return new Document(Entity.ID, new ObjectId()).append("name", "Jane Doe").append("age", 42).append("score",
+				0.75).append("active", true).append("birthday", new DateTime(1973, 4, 2, 0, 0).toDate()).append("tags",
+				Lists.newArrayList("vip", "newsletter")).append("address",
+				new Document("street", "Main Street 1").append("city", "Springfield").append("zip", "12345"));
+	}
+}
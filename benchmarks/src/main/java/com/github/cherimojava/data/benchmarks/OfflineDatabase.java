@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.benchmarks;
+
+import static java.lang.String.format;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.bson.codecs.configuration.CodecRegistry;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * MongoDatabase which isn't backed by any MongoDB instance. Collections can be obtained and configured, but every
+ * operation requiring a database fails. This allows to create entities through an EntityFactory without running
+ * MongoDB, as long as they're not loaded or saved
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+final class OfflineDatabase {
+
+	private OfflineDatabase() {
+	}
+
+	/**
+	 * creates a new MongoDatabase not backed by any MongoDB instance
+	 */
+	static MongoDatabase create() {
+		return offline(MongoDatabase.class, null);
+	}
+
+	private static <T> T offline(Class<T> type, final CodecRegistry registry) {
+		return type.cast(Proxy.newProxyInstance(OfflineDatabase.class.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						switch (method.getName()) {
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "toString":
+							return "offline " + method.getDeclaringClass().getSimpleName();
+						case "getCodecRegistry":
+							return registry;
+						case "withCodecRegistry":
+							return offline(method.getReturnType(), (CodecRegistry) args[0]);
+						default:
+							if (method.getReturnType() == MongoCollection.class
+									|| method.getReturnType() == MongoDatabase.class) {
+								// configuring collections and databases works without MongoDB
+								return offline(method.getReturnType(), registry);
+							}
+							throw new UnsupportedOperationException(format("%s isn't supported without MongoDB",
+									method.getName()));
+						}
+					}
+				}));
+	}
+}
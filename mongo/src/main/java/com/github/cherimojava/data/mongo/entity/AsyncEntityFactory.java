@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Asynchronous facade of an {@link EntityFactory}. Each operation is executed on an executor instead of the calling
+ * thread and completes the returned future with its result, or exceptionally with the exception thrown. Operations are
+ * executed exactly like their blocking counterparts, going through the codecs, identity map, cache and
+ * instrumentation of the factory. This allows to fan out independent loads without blocking a thread per query. As
+ * entities aren't thread safe, an entity must not be modified while an asynchronous operation on it is running.
+ * Scopes bound to the calling thread, like those of {@link com.github.cherimojava.data.mongo.metrics.LazyLoadDetector}
+ * and {@link ReferenceResolver}, don't carry over to the executor threads. Lazy loads of an asynchronous operation
+ * aren't counted by the callers detector scope, and its references are resolved within the operation itself.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class AsyncEntityFactory {
+
+	/**
+	 * number of threads executing operations of the default executor
+	 */
+	static final int DEFAULT_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+	private final EntityFactory factory;
+
+	private final Executor executor;
+
+	AsyncEntityFactory(EntityFactory factory, Executor executor) {
+		this.factory = factory;
+		this.executor = checkNotNull(executor);
+	}
+
+	/**
+	 * creates the executor used if no executor is given. It runs up to {@link #DEFAULT_THREADS} daemon threads, which
+	 * are stopped after being idle for a while
+	 */
+	static Executor defaultExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat(
+						"cherimodata-async-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * returns the factory executing the operations
+	 */
+	public EntityFactory getFactory() {
+		return factory;
+	}
+
+	/**
+	 * saves the given entity, see {@link Entity#save()}
+	 *
+	 * @param e
+	 *            entity to save
+	 * @return future completed with true if the entity was saved, false if it had no modifications to save
+	 */
+	public CompletableFuture<Boolean> save(final Entity e) {
+		return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
+			@Override
+			public Boolean get() {
+				return e.save();
+			}
+		}, executor);
+	}
+
+	/**
+	 * saves all given entities in ordered bulk writes, see {@link EntityFactory#saveAll(Iterable)}
+	 *
+	 * @param entities
+	 *            entities to save
+	 * @return future completed with the outcome of saving each entity
+	 */
+	public CompletableFuture<SaveResult> saveAll(Iterable<? extends Entity> entities) {
+		return saveAll(entities, true);
+	}
+
+	/**
+	 * saves all given entities using bulk writes, see {@link EntityFactory#saveAll(Iterable, boolean)}
+	 *
+	 * @param entities
+	 *            entities to save
+	 * @param ordered
+	 *            if writes should be ordered or not
+	 * @return future completed with the outcome of saving each entity
+	 */
+	public CompletableFuture<SaveResult> saveAll(Iterable<? extends Entity> entities, final boolean ordered) {
+		// take a copy, so that the caller can't change what is saved
+		final List<Entity> all = Lists.<Entity> newArrayList(entities);
+		return CompletableFuture.supplyAsync(new Supplier<SaveResult>() {
+			@Override
+			public SaveResult get() {
+				return factory.saveAll(all, ordered);
+			}
+		}, executor);
+	}
+
+	/**
+	 * loads the entity of the given class with the given id, see {@link EntityFactory#load(Class, Object)}
+	 *
+	 * @param clazz
+	 *            entity class to load
+	 * @param id
+	 *            id of the entity to load
+	 * @return future completed with the entity or null if no such entity exists
+	 */
+	public <T extends Entity> CompletableFuture<T> load(final Class<T> clazz, final Object id) {
+		return CompletableFuture.supplyAsync(new Supplier<T>() {
+			@Override
+			public T get() {
+				return factory.load(clazz, id);
+			}
+		}, executor);
+	}
+
+	/**
+	 * loads only the properties of the given projection of the entity of the given class with the given id, see
+	 * {@link EntityFactory#load(Class, Object, Projection)}
+	 *
+	 * @param clazz
+	 *            entity class to load
+	 * @param id
+	 *            id of the entity to load
+	 * @param projection
+	 *            properties to load
+	 * @return future completed with the partially loaded entity or null if no such entity exists
+	 */
+	public <T extends Entity> CompletableFuture<T> load(final Class<T> clazz, final Object id,
+			final Projection projection) {
+		return CompletableFuture.supplyAsync(new Supplier<T>() {
+			@Override
+			public T get() {
+				return factory.load(clazz, id, projection);
+			}
+		}, executor);
+	}
+
+	/**
+	 * loads all entities of the given class with the given ids, see
+	 * {@link EntityFactory#loadAll(Class, Collection)}
+	 *
+	 * @param clazz
+	 *            entity class to load
+	 * @param ids
+	 *            ids of the entities to load
+	 * @return future completed with the entity for each given id, null for ids without entity
+	 */
+	public <T extends Entity> CompletableFuture<Map<Object, T>> loadAll(final Class<T> clazz, Collection<?> ids) {
+		final List<Object> all = Lists.<Object> newArrayList(ids);
+		return CompletableFuture.supplyAsync(new Supplier<Map<Object, T>>() {
+			@Override
+			public Map<Object, T> get() {
+				return factory.loadAll(clazz, all);
+			}
+		}, executor);
+	}
+
+	/**
+	 * removes the given entity from MongoDB, see {@link Entity#drop()}
+	 *
+	 * @param e
+	 *            entity to drop
+	 * @return future completed once the entity is dropped
+	 */
+	public CompletableFuture<Void> drop(final Entity e) {
+		return CompletableFuture.runAsync(new Runnable() {
+			@Override
+			public void run() {
+				e.drop();
+			}
+		}, executor);
+	}
+
+	/**
+	 * executes the given query and collects all matching entities
+	 *
+	 * @param query
+	 *            query to execute, must not be changed until the future is completed
+	 * @return future completed with all matching entities
+	 */
+	public <T extends Entity> CompletableFuture<List<T>> list(final Query<T> query) {
+		return CompletableFuture.supplyAsync(new Supplier<List<T>>() {
+			@Override
+			public List<T> get() {
+				try (EntityCursor<T> cursor = query.iterator()) {
+					return Lists.newArrayList(cursor);
+				}
+			}
+		}, executor);
+	}
+
+	/**
+	 * executes the given query and returns the first matching entity, see {@link Query#first()}
+	 *
+	 * @param query
+	 *            query to execute, must not be changed until the future is completed
+	 * @return future completed with the first matching entity or null if no entity matches
+	 */
+	public <T extends Entity> CompletableFuture<T> first(final Query<T> query) {
+		return CompletableFuture.supplyAsync(new Supplier<T>() {
+			@Override
+			public T get() {
+				return query.first();
+			}
+		}, executor);
+	}
+
+	/**
+	 * counts the entities matching the given query, see {@link Query#count()}
+	 *
+	 * @param query
+	 *            query to execute, must not be changed until the future is completed
+	 * @return future completed with the number of matching entities
+	 */
+	public CompletableFuture<Long> count(final Query<?> query) {
+		return CompletableFuture.supplyAsync(new Supplier<Long>() {
+			@Override
+			public Long get() {
+				return query.count();
+			}
+		}, executor);
+	}
+}
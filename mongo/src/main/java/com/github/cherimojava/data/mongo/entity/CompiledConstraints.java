@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import javax.validation.metadata.ConstraintDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Compiles the common constraints (@NotNull, @Size, @Min, @Max and @Pattern) of a property into direct checks, which
+ * don't need to go through the validator. Properties having any other constraint can't be compiled and are left to the
+ * validator. A value failing a compiled check is validated through the validator as well, to report the violations
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+final class CompiledConstraints {
+
+	/**
+	 * types on which @Min and @Max are compiled, other numbers are left to the validator
+	 */
+	private static final Set<Class<?>> integralTypes = ImmutableSet.<Class<?>> of(Long.class, Integer.class,
+			Short.class, Byte.class);
+
+	private CompiledConstraints() {
+	}
+
+	/**
+	 * compiles the constraints of the given property, which are validated on entities
+	 *
+	 * @param descriptor
+	 *            constraints of the property
+	 * @param type
+	 *            type of the property
+	 * @return check which returns true if the value matches all constraints, or null if the constraints can't be
+	 *         compiled
+	 */
+	static Predicate<Object> compile(PropertyDescriptor descriptor, Class<?> type) {
+		List<Predicate<Object>> checks = Lists.newArrayList();
+		for (ConstraintDescriptor<?> constraint : descriptor.findConstraints().unorderedAndMatchingGroups(
+				Entity.Special.class).getConstraintDescriptors()) {
+			if (!constraint.getComposingConstraints().isEmpty()) {
+				// composed constraints might have any semantic
+				return null;
+			}
+			Predicate<Object> check = compile(constraint.getAnnotation(), type);
+			if (check == null) {
+				return null;
+			}
+			checks.add(check);
+		}
+		return Predicates.and(checks);
+	}
+
+	private static Predicate<Object> compile(Annotation constraint, Class<?> type) {
+		if (constraint instanceof NotNull) {
+			return Predicates.notNull();
+		}
+		if (constraint instanceof Size) {
+			return size((Size) constraint, type);
+		}
+		if (constraint instanceof Min && integralTypes.contains(type)) {
+			final long min = ((Min) constraint).value();
+			return new Predicate<Object>() {
+				@Override
+				public boolean apply(Object value) {
+					return value == null || ((Number) value).longValue() >= min;
+				}
+			};
+		}
+		if (constraint instanceof Max && integralTypes.contains(type)) {
+			final long max = ((Max) constraint).value();
+			return new Predicate<Object>() {
+				@Override
+				public boolean apply(Object value) {
+					return value == null || ((Number) value).longValue() <= max;
+				}
+			};
+		}
+		if (constraint instanceof javax.validation.constraints.Pattern && CharSequence.class.isAssignableFrom(type)) {
+			javax.validation.constraints.Pattern p = (javax.validation.constraints.Pattern) constraint;
+			int flags = 0;
+			for (javax.validation.constraints.Pattern.Flag flag : p.flags()) {
+				flags |= flag.getValue();
+			}
+			final Pattern pattern = Pattern.compile(p.regexp(), flags);
+			return new Predicate<Object>() {
+				@Override
+				public boolean apply(Object value) {
+					return value == null || pattern.matcher((CharSequence) value).matches();
+				}
+			};
+		}
+		return null;
+	}
+
+	private static Predicate<Object> size(Size size, Class<?> type) {
+		final int min = size.min();
+		final int max = size.max();
+		if (CharSequence.class.isAssignableFrom(type)) {
+			return new Predicate<Object>() {
+				@Override
+				public boolean apply(Object value) {
+					return value == null || inRange(((CharSequence) value).length(), min, max);
+				}
+			};
+		}
+		if (Collection.class.isAssignableFrom(type)) {
+			return new Predicate<Object>() {
+				@Override
+				public boolean apply(Object value) {
+					return value == null || inRange(((Collection) value).size(), min, max);
+				}
+			};
+		}
+		if (Map.class.isAssignableFrom(type)) {
+			return new Predicate<Object>() {
+				@Override
+				public boolean apply(Object value) {
+					return value == null || inRange(((Map) value).size(), min, max);
+				}
+			};
+		}
+		if (type.isArray()) {
+			return new Predicate<Object>() {
+				@Override
+				public boolean apply(Object value) {
+					return value == null || inRange(Array.getLength(value), min, max);
+				}
+			};
+		}
+		return null;
+	}
+
+	private static boolean inRange(int length, int min, int max) {
+		return length >= min && length <= max;
+	}
+}
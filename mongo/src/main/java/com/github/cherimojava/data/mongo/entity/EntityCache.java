@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.github.cherimojava.data.mongo.entity.Entity.ID;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.RawBsonDocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+
+import com.github.cherimojava.data.mongo.entity.annotation.Cached;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Read through cache for entities of a {@link Cached} entity class, loaded by id through an EntityFactory. The cache
+ * holds the raw documents, so each load results in a new entity instance and modifications of a loaded entity don't
+ * leak into the cache.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class EntityCache {
+
+	private final Cache<Object, RawBsonDocument> documents;
+
+	EntityCache(Cached cached) {
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(cached.maximumSize()).recordStats();
+		if (cached.expireAfterWrite() > 0) {
+			builder.expireAfterWrite(cached.expireAfterWrite(), cached.unit());
+		}
+		documents = builder.build();
+	}
+
+	/**
+	 * returns the entity with the given id, loading it from the given collection if it's not cached
+	 *
+	 * @param collection
+	 *            collection to load the entity from, if it's not cached
+	 * @param id
+	 *            id of the entity to load
+	 * @return entity with the given id or null if no such entity exists
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends Entity> T find(MongoCollection<T> collection, Object id) {
+		RawBsonDocument document = documents.getIfPresent(id);
+		if (document == null) {
+			document = collection.withDocumentClass(RawBsonDocument.class).withCodecRegistry(
+					CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(new RawBsonDocumentCodec()),
+							collection.getCodecRegistry())).find(new Document(ID, id)).first();
+			if (document == null) {
+				return null;
+			}
+			documents.put(id, document);
+		}
+		return document.decode(collection.getCodecRegistry().get(collection.getDocumentClass()));
+	}
+
+	/**
+	 * removes the entity with the given id from the cache
+	 */
+	public void invalidate(Object id) {
+		documents.invalidate(id);
+	}
+
+	/**
+	 * removes all entities from the cache
+	 */
+	public void invalidateAll() {
+		documents.invalidateAll();
+	}
+
+	/**
+	 * returns the (approximate) number of cached entities
+	 */
+	public long size() {
+		return documents.size();
+	}
+
+	/**
+	 * returns statistics about hits, misses and evictions of this cache
+	 */
+	public CacheStats stats() {
+		return documents.stats();
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import com.mongodb.client.MongoCursor;
+
+/**
+ * Cursor over the result of a {@link Query}. Entities are decoded batch wise once they're requested, so only the
+ * current batch is held in memory. Eager references of all entities of a batch are resolved together. The cursor must
+ * be closed once it's no longer needed.
+ *
+ * @param <T>
+ *            Entity type returned
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class EntityCursor<T extends Entity> implements Iterator<T>, Closeable {
+
+	private final EntityFactory factory;
+	private final MongoCursor<T> cursor;
+	private final int batchSize;
+
+	/**
+	 * already decoded entities of the current batch
+	 */
+	private final Queue<T> batch;
+
+	EntityCursor(EntityFactory factory, MongoCursor<T> cursor, int batchSize) {
+		this.factory = factory;
+		this.cursor = cursor;
+		this.batchSize = batchSize;
+		batch = new ArrayDeque<>(batchSize);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (batch.isEmpty()) {
+			nextBatch();
+		}
+		return !batch.isEmpty();
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return batch.poll();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Entities can't be removed through a cursor");
+	}
+
+	/**
+	 * closes the underlying MongoDB cursor
+	 */
+	@Override
+	public void close() {
+		cursor.close();
+	}
+
+	/**
+	 * decodes the next batch of entities, resolving their references together
+	 */
+	private void nextBatch() {
+		try (ReferenceResolver resolver = ReferenceResolver.open(factory)) {
+			while (batch.size() < batchSize && cursor.hasNext()) {
+				batch.add(cursor.next());
+			}
+			resolver.complete();
+		}
+	}
+}
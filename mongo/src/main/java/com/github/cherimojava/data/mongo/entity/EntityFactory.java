@@ -20,7 +20,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
 import java.lang.reflect.Modifier;
-import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -28,26 +27,41 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.json.JsonReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.cherimojava.data.mongo.entity.annotation.Cached;
 import com.github.cherimojava.data.mongo.entity.annotation.Collection;
 import com.github.cherimojava.data.mongo.entity.annotation.Index;
 import com.github.cherimojava.data.mongo.entity.annotation.IndexField;
 import com.github.cherimojava.data.mongo.io.EntityCodec;
+import com.github.cherimojava.data.mongo.io.EntityCodecProvider;
+import com.github.cherimojava.data.mongo.metrics.EntityMetrics;
+import com.github.cherimojava.data.mongo.metrics.Instrumentation;
+import com.github.cherimojava.data.mongo.metrics.Operation;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.operation.OrderBy;
 
 /**
@@ -59,12 +73,37 @@ import com.mongodb.operation.OrderBy;
 public class EntityFactory {
 	private static final Logger LOG = LoggerFactory.getLogger(EntityFactory.class);
 
+	/**
+	 * maximum number of write operations send within one bulk write
+	 */
+	static final int BULK_BATCH_SIZE = 1000;
+
 	/**
 	 * Where all entity for this factory will be stored. Each entity goes into it's own collection, but within the same
 	 * DB
 	 */
 	private final MongoDatabase db;
 
+	/**
+	 * identity map keeping track of the entities materialized through this factory, null if disabled
+	 */
+	private final IdentityMap identityMap;
+
+	/**
+	 * when entities created through this factory are validated, unless their entity class declares it
+	 */
+	private volatile ValidationMode validationMode = ValidationMode.ON_SET;
+
+	/**
+	 * receives timings and document sizes of the operations executed through this factory and its entities
+	 */
+	private volatile Instrumentation instrumentation = Instrumentation.NONE;
+
+	/**
+	 * asynchronous facade of this factory using the default executor, created on first use
+	 */
+	private volatile AsyncEntityFactory async;
+
 	/**
 	 * holds to a given Entity class the corresponding MongoCollection backing it
 	 */
@@ -84,7 +123,8 @@ public class EntityFactory {
 					// TODO need to add verification that index field matches existing property
 					Class<? extends Entity> clazz = properties.getEntityClass();
 					Collection c = clazz.getAnnotation(Collection.class);
-					MongoCollection<? extends Entity> coll = EntityCodec.getCollectionFor(db, properties);
+					MongoCollection<? extends Entity> coll = EntityCodec.getCollectionFor(EntityFactory.this,
+							properties);
 					if (c != null && c.indexes() != null) {
 						LOG.debug("Entity class {} has indexes, ensuring that MongoDB is setup",
 								properties.getEntityClass());
@@ -114,6 +154,44 @@ public class EntityFactory {
 				}
 			});
 
+	/**
+	 * holds to a given Entity class the cache for its entities, absent if the Entity class isn't cached
+	 */
+	private LoadingCache<Class<? extends Entity>, Optional<EntityCache>> caches = CacheBuilder.newBuilder().build(
+			new CacheLoader<Class<? extends Entity>, Optional<EntityCache>>() {
+				@Override
+				public Optional<EntityCache> load(Class<? extends Entity> clazz) throws Exception {
+					Cached cached = clazz.getAnnotation(Cached.class);
+					if (cached == null) {
+						return Optional.absent();
+					}
+					LOG.debug("Entity class {} is cached, holding up to {} entities", clazz, cached.maximumSize());
+					return Optional.of(new EntityCache(cached));
+				}
+			});
+
+	/**
+	 * holds to a given Entity class the codec registry used to de/encode its entities
+	 */
+	private LoadingCache<Class<? extends Entity>, CodecRegistry> registries = CacheBuilder.newBuilder().build(
+			new CacheLoader<Class<? extends Entity>, CodecRegistry>() {
+				@Override
+				public CodecRegistry load(Class<? extends Entity> clazz) throws Exception {
+					return EntityCodecProvider.createCodecRegistry(EntityFactory.this, clazz);
+				}
+			});
+
+	/**
+	 * holds to a given Entity class the codec de/encoding its entities
+	 */
+	private LoadingCache<Class<? extends Entity>, EntityCodec<? extends Entity>> codecs = CacheBuilder.newBuilder().build(
+			new CacheLoader<Class<? extends Entity>, EntityCodec<? extends Entity>>() {
+				@Override
+				public EntityCodec<? extends Entity> load(Class<? extends Entity> clazz) throws Exception {
+					return new EntityCodec<>(EntityFactory.this, defFactory.create(clazz));
+				}
+			});
+
 	/**
 	 * get the mongo collection belonging to the given entity class
 	 *
@@ -128,6 +206,42 @@ public class EntityFactory {
 		}
 	}
 
+	/**
+	 * get the cache of this factory for the given entity class, which exists only for entity classes annotated with
+	 * {@link Cached}
+	 *
+	 * @param clazz
+	 *            entity class to get the cache for
+	 * @return cache of the given entity class or null if the entity class isn't cached
+	 */
+	public EntityCache getCache(Class<? extends Entity> clazz) {
+		return caches.getUnchecked(clazz).orNull();
+	}
+
+	/**
+	 * get the codec registry of this factory for the given entity class. Entities of the given class are created
+	 * through this factory and nested documents within lists etc. are decoded as entities of the given class
+	 *
+	 * @param clazz
+	 *            entity class to get the codec registry for
+	 * @return codec registry of the given entity class, shared by all users of this factory
+	 */
+	public CodecRegistry getCodecRegistry(Class<? extends Entity> clazz) {
+		return registries.getUnchecked(clazz);
+	}
+
+	/**
+	 * get the codec of this factory for the given entity class
+	 *
+	 * @param clazz
+	 *            entity class to get the codec for
+	 * @return codec of the given entity class, shared by all users of this factory
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> EntityCodec<T> getCodec(Class<T> clazz) {
+		return (EntityCodec<T>) codecs.getUnchecked(clazz);
+	}
+
 	/**
 	 * contains information about Default Implementations used when property defines a interface
 	 */
@@ -135,6 +249,23 @@ public class EntityFactory {
 
 	private static final EntityPropertyFactory defFactory = new EntityPropertyFactory();
 
+	/**
+	 * factories shared by everything working on a given database without an explicit factory, like codecs and
+	 * collections created for a database only. Factories are kept as long as they're in use
+	 */
+	private static final LoadingCache<MongoDatabase, EntityFactory> shared = CacheBuilder.newBuilder().weakKeys().weakValues().build(
+			new CacheLoader<MongoDatabase, EntityFactory>() {
+				@Override
+				public EntityFactory load(MongoDatabase db) throws Exception {
+					return new EntityFactory(db);
+				}
+			});
+
+	/**
+	 * factory without database, used to de/encode entities which aren't bound to any database, e.g. for toString()
+	 */
+	private static final EntityFactory detached = new EntityFactory(null);
+
 	static {
 		interfaceImpls = Maps.newConcurrentMap();
 		interfaceImpls.put(List.class, ArrayList.class);
@@ -142,6 +273,18 @@ public class EntityFactory {
 		interfaceImpls.put(Queue.class, LinkedBlockingQueue.class);
 	}
 
+	/**
+	 * returns the EntityFactory shared by all users of the given database which don't bring their own factory. The
+	 * shared factory keeps no identity map
+	 *
+	 * @param db
+	 *            MongoDatabase to get the shared factory for, null for a factory not bound to any database
+	 * @return shared EntityFactory of the given database
+	 */
+	public static EntityFactory forDatabase(MongoDatabase db) {
+		return db == null ? detached : shared.getUnchecked(db);
+	}
+
 	/**
 	 * creates a new EntityFactory, with the given Database for storage. Instances created through create will be linked
 	 * to a collection within the given Database.
@@ -150,7 +293,131 @@ public class EntityFactory {
 	 *            MongoDatabase into which Entities will be saved if created throught create method
 	 */
 	public EntityFactory(MongoDatabase db) {
+		this(db, false);
+	}
+
+	/**
+	 * creates a new EntityFactory, with the given Database for storage. If requested the factory keeps an identity map,
+	 * so that loading, referencing or saving an entity of a given class and id always results in the same entity
+	 * instance, as long as this instance is in use. Entities already loaded are returned without querying MongoDB
+	 * again.
+	 *
+	 * @param db
+	 *            MongoDatabase into which Entities will be saved if created throught create method
+	 * @param identityMap
+	 *            true if the factory shall keep an identity map, false otherwise
+	 */
+	public EntityFactory(MongoDatabase db, boolean identityMap) {
 		this.db = db;
+		this.identityMap = identityMap ? new IdentityMap() : null;
+	}
+
+	/**
+	 * returns when entities created through this factory are validated
+	 *
+	 * @return validation mode of this factory
+	 */
+	public ValidationMode getValidationMode() {
+		return validationMode;
+	}
+
+	/**
+	 * sets when entities created through this factory from now on are validated. Entity classes annotated with
+	 * {@link com.github.cherimojava.data.mongo.entity.annotation.Validate} keep their own validation mode. Defaults to
+	 * {@link ValidationMode#ON_SET}
+	 *
+	 * @param validationMode
+	 *            validation mode of this factory
+	 */
+	public void setValidationMode(ValidationMode validationMode) {
+		this.validationMode = checkNotNull(validationMode);
+	}
+
+	/**
+	 * returns the instrumentation receiving timings and document sizes of the operations executed through this
+	 * factory
+	 *
+	 * @return instrumentation of this factory, {@link Instrumentation#NONE} unless set otherwise
+	 */
+	public Instrumentation getInstrumentation() {
+		return instrumentation;
+	}
+
+	/**
+	 * sets the instrumentation receiving timings and document sizes of the operations executed through this factory
+	 * and the entities created through it from now on
+	 *
+	 * @param instrumentation
+	 *            instrumentation of this factory, {@link Instrumentation#NONE} to record nothing
+	 */
+	public void setInstrumentation(Instrumentation instrumentation) {
+		this.instrumentation = checkNotNull(instrumentation);
+	}
+
+	/**
+	 * starts recording metrics of the operations executed through this factory and the entities created through it
+	 * from now on. The metrics are registered in JMX as
+	 * com.github.cherimojava.data:type=EntityFactory,name=&lt;database&gt;@&lt;factory&gt;. If metrics are already
+	 * enabled, the existing ones are returned
+	 *
+	 * @return metrics of this factory
+	 */
+	public synchronized EntityMetrics enableMetrics() {
+		if (instrumentation instanceof EntityMetrics) {
+			return (EntityMetrics) instrumentation;
+		}
+		EntityMetrics metrics = new EntityMetrics();
+		metrics.register((db != null ? db.getName() : "detached") + "@"
+				+ Integer.toHexString(System.identityHashCode(this)));
+		setInstrumentation(metrics);
+		return metrics;
+	}
+
+	/**
+	 * stops recording metrics enabled through {@link #enableMetrics()} and removes them from JMX
+	 */
+	public synchronized void disableMetrics() {
+		if (instrumentation instanceof EntityMetrics) {
+			((EntityMetrics) instrumentation).unregister();
+			setInstrumentation(Instrumentation.NONE);
+		}
+	}
+
+	/**
+	 * returns the asynchronous facade of this factory. Its operations are executed on an executor owned by this
+	 * factory, which runs a limited number of daemon threads
+	 *
+	 * @return asynchronous facade of this factory
+	 */
+	public AsyncEntityFactory async() {
+		if (async == null) {
+			synchronized (this) {
+				if (async == null) {
+					async = new AsyncEntityFactory(this, AsyncEntityFactory.defaultExecutor());
+				}
+			}
+		}
+		return async;
+	}
+
+	/**
+	 * returns an asynchronous facade of this factory executing its operations on the given executor
+	 *
+	 * @param executor
+	 *            executor to run the operations on
+	 * @return asynchronous facade of this factory
+	 */
+	public AsyncEntityFactory async(Executor executor) {
+		return new AsyncEntityFactory(this, executor);
+	}
+
+	/**
+	 * returns the identity map of this factory
+	 *
+	 * @return identity map or null if this factory keeps no identity map
+	 */
+	public IdentityMap getIdentityMap() {
+		return identityMap;
 	}
 
 	/**
@@ -167,18 +434,67 @@ public class EntityFactory {
 	 */
 	public <T extends Entity> T create(Class<T> clazz) {
 		EntityInvocationHandler handler = new EntityInvocationHandler(defFactory.create(clazz), getCollection(clazz));
+		handler.setIdentityMap(identityMap);
+		handler.setCache(getCache(clazz));
+		handler.setValidationMode(validationMode);
+		handler.setInstrumentation(instrumentation);
 		return instantiate(clazz, handler);
 	}
 
+	/**
+	 * Creates a new instance of the given Entity class, which is embedded within the given parent entity. As embedded
+	 * entities aren't stored within a collection of their own, neither the collection is looked up nor are indexes
+	 * created. Saving the embedded entity saves the entity it's embedded in
+	 *
+	 * @param clazz
+	 *            Entity class to create a new Instance from
+	 * @param parent
+	 *            entity the new entity is embedded in
+	 * @param <T>
+	 *            Entity type
+	 * @return new embedded Entity instance of the given class
+	 */
+	public <T extends Entity> T createEmbedded(Class<T> clazz, Entity parent) {
+		EntityInvocationHandler handler = new EntityInvocationHandler(defFactory.create(clazz));
+		handler.setParent(EntityInvocationHandler.getHandler(parent));
+		handler.setValidationMode(validationMode);
+		handler.setInstrumentation(instrumentation);
+		return instantiate(clazz, handler);
+	}
+
+	/**
+	 * creates a lazy entity of the given class, which is loaded once it's accessed. If this factory keeps an identity
+	 * map and there's already an entity for the given id, the existing entity is returned
+	 *
+	 * @param clazz
+	 *            Entity class to create a lazy instance from
+	 * @param id
+	 *            id of the entity
+	 * @return lazy entity with the given id
+	 */
 	public <T extends Entity> T createLazy(Class<T> clazz, Object id) {
+		if (identityMap != null) {
+			T existing = identityMap.get(clazz, id);
+			if (existing != null) {
+				return existing;
+			}
+		}
 		EntityInvocationHandler handler = new EntityInvocationHandler(defFactory.create(clazz), getCollection(clazz),
 				id);
+		handler.setIdentityMap(identityMap);
+		handler.setCache(getCache(clazz));
+		handler.setValidationMode(validationMode);
+		handler.setInstrumentation(instrumentation);
 		T t = instantiate(clazz, handler);
+		if (identityMap != null) {
+			t = identityMap.putIfAbsent(t);
+		}
 		return t;
 	}
 
 	/**
-	 * allows to load an Entity which is identified by the given id, or null if no such entity was found.
+	 * allows to load an Entity which is identified by the given id, or null if no such entity was found. Entities of
+	 * {@link Cached} entity classes are loaded from the cache of this factory, if present.
 	 *
 	 * @param id
 	 *            of the document to load
@@ -186,7 +502,104 @@ public class EntityFactory {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Entity> T load(Class<T> clazz, Object id) {
-		return EntityInvocationHandler.find((MongoCollection<T>) getCollection(clazz), id);
+		if (identityMap != null) {
+			T loaded = identityMap.getLoaded(clazz, id);
+			if (loaded != null) {
+				return loaded;
+			}
+		}
+		Instrumentation instrumentation = this.instrumentation;
+		long start = instrumentation.start(clazz, Operation.LOAD);
+		try {
+			EntityCache cache = getCache(clazz);
+			if (cache != null) {
+				return cache.find((MongoCollection<T>) getCollection(clazz), id);
+			}
+			return EntityInvocationHandler.find((MongoCollection<T>) getCollection(clazz), id);
+		} finally {
+			instrumentation.stop(clazz, Operation.LOAD, start);
+		}
+	}
+
+	/**
+	 * loads only the properties of the given projection of the Entity which is identified by the given id. If the
+	 * entity is already loaded completely (identity map), the complete entity is returned
+	 *
+	 * @param clazz
+	 *            entity class to load
+	 * @param id
+	 *            of the document to load
+	 * @param projection
+	 *            properties to load
+	 * @return partially loaded Entity matching this id or null if no such entity was found
+	 */
+	public <T extends Entity> T load(Class<T> clazz, Object id, Projection projection) {
+		if (identityMap != null) {
+			T loaded = identityMap.getLoaded(clazz, id);
+			if (loaded != null) {
+				return loaded;
+			}
+		}
+		return query(clazz).eq(Entity.ID, id).project(projection).first();
+	}
+
+	/**
+	 * loads all entities of the given class with the given ids. Other than calling {@link #load(Class, Object)} for
+	 * each id this requires only a single $in query per chunk of ids. Eager references of the loaded entities are
+	 * resolved together as well, requiring a single $in query per referenced entity class.
+	 *
+	 * @param clazz
+	 *            entity class to load
+	 * @param ids
+	 *            ids of the entities to load
+	 * @param <T>
+	 *            Entity type
+	 * @return map containing for each given id, in the order of the given ids, the corresponding entity. Ids for which
+	 *         no entity exists are mapped to null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> Map<Object, T> loadAll(Class<T> clazz, java.util.Collection<?> ids) {
+		Instrumentation instrumentation = this.instrumentation;
+		long start = instrumentation.start(clazz, Operation.LOAD);
+		// resolve eager references of all loaded entities together
+		try (ReferenceResolver resolver = ReferenceResolver.open(this)) {
+			Map<Object, T> result;
+			if (identityMap == null) {
+				result = EntityInvocationHandler.findAll((MongoCollection<T>) getCollection(clazz), ids);
+			} else {
+				// only query entities not loaded yet
+				result = Maps.newLinkedHashMap();
+				List<Object> missing = Lists.newArrayList();
+				for (Object id : ids) {
+					T loaded = identityMap.getLoaded(clazz, id);
+					result.put(id, loaded);
+					if (loaded == null) {
+						missing.add(id);
+					}
+				}
+				if (!missing.isEmpty()) {
+					result.putAll(EntityInvocationHandler.findAll((MongoCollection<T>) getCollection(clazz), missing));
+				}
+			}
+			resolver.complete();
+			return result;
+		} finally {
+			instrumentation.stop(clazz, Operation.LOAD, start);
+		}
+	}
+
+	/**
+	 * creates a new query for entities of the given class, which are stored within the database of this factory
+	 *
+	 * @param clazz
+	 *            entity class to query
+	 * @param <T>
+	 *            Entity type
+	 * @return new query, returning all entities of the given class unless restricted further
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> Query<T> query(Class<T> clazz) {
+		return new Query<>(this, clazz, (MongoCollection<T>) getCollection(clazz));
 	}
 
 	/**
@@ -215,7 +628,9 @@ public class EntityFactory {
 	}
 
 	/**
-	 * Creates a new instance of the given Entity based Class, allowing to provide a custom EntityInvocationHandler
+	 * Creates a new instance of the given Entity based Class, allowing to provide a custom EntityInvocationHandler. The
+	 * instance is created through the class generated once per Entity class, rather than looking up the generated
+	 * class on each invocation
 	 *
 	 * @param clazz
 	 *            entity class to instantiate from
@@ -225,8 +640,7 @@ public class EntityFactory {
 	 */
 	@SuppressWarnings("unchecked")
 	static <T extends Entity> T instantiate(Class<T> clazz, EntityInvocationHandler handler) {
-		T proxy = (T) Proxy.newProxyInstance(EntityInvocationHandler.class.getClassLoader(), new Class<?>[] { clazz },
-				handler);
+		T proxy = (T) handler.getProperties().newInstance(handler);
 		handler.setProxy(proxy);
 		return proxy;
 	}
@@ -254,7 +668,7 @@ public class EntityFactory {
 	 *         Entity.save()
 	 */
 	public <T extends Entity> T readEntity(Class<T> clazz, String json) {
-		return new EntityCodec<T>(db, defFactory.create(clazz)).decode(new JsonReader(json), null);
+		return getCodec(clazz).decode(new JsonReader(json), null);
 	}
 
 	/**
@@ -270,8 +684,7 @@ public class EntityFactory {
 	 *         to be saved, e.g. Entity.save()
 	 */
 	public <T extends Entity> List<T> readList(Class<T> clazz, String json) {
-		return (List<T>) new EntityCodec<T>(db, defFactory.create(clazz)).getCodec(List.class).decode(
-				new JsonReader(json), null);
+		return (List<T>) getCodec(clazz).getCodec(List.class).decode(new JsonReader(json), null);
 	}
 
 	/**
@@ -310,4 +723,154 @@ public class EntityFactory {
 	public void save(Entity e) {
 		EntityInvocationHandler.save(EntityInvocationHandler.getHandler(e), getCollection(e.entityClass()));
 	}
+
+	/**
+	 * saves all given entities in ordered bulk writes, see {@link #saveAll(Iterable, boolean)}
+	 *
+	 * @param entities
+	 *            entities to save
+	 * @return outcome of saving each entity
+	 */
+	public SaveResult saveAll(Iterable<? extends Entity> entities) {
+		return saveAll(entities, true);
+	}
+
+	/**
+	 * saves all given entities into the collections for this factory using bulk writes. Entities are grouped by their
+	 * entity class and written in batches of at most {@value #BULK_BATCH_SIZE} operations, which the driver splits
+	 * further if needed to fit into the server message size limits. Only modified entities are written, in the same
+	 * way {@link Entity#save()} does. All modified entities are validated before anything is written. If writes are
+	 * ordered the first failing write stops all further writes, otherwise all writes are tried. Other than
+	 * {@link Entity#save()} persisted entities which were removed from MongoDB meanwhile aren't inserted again, they're
+	 * reported as {@link SaveResult.Outcome#NOT_FOUND} instead.
+	 *
+	 * @param entities
+	 *            entities to save
+	 * @param ordered
+	 *            if writes should be ordered or not
+	 * @return outcome of saving each entity
+	 * @throws javax.validation.ConstraintViolationException
+	 *             if any modified entity doesn't match its constraints, nothing is written in this case
+	 */
+	@SuppressWarnings("unchecked")
+	public SaveResult saveAll(Iterable<? extends Entity> entities, boolean ordered) {
+		List<Entity> all = Lists.newArrayList(entities);
+		SaveResult result = new SaveResult(all);
+
+		// group the positions of the entities by their class and validate modified ones upfront
+		Map<Class<? extends Entity>, List<Integer>> byClass = Maps.newLinkedHashMap();
+		for (int i = 0; i < all.size(); i++) {
+			Entity e = all.get(i);
+			EntityInvocationHandler handler = EntityInvocationHandler.getHandler(e);
+			// like save(), lazy entities are loaded first. Otherwise they look like new entities holding only their id
+			handler.lazyLoad();
+			if (!handler.persisted || !handler.getModifiedProperties().isEmpty()) {
+				EntityInvocationHandler.validate(handler);
+			}
+			List<Integer> positions = byClass.get(e.entityClass());
+			if (positions == null) {
+				positions = Lists.newArrayList();
+				byClass.put(e.entityClass(), positions);
+			}
+			positions.add(i);
+		}
+
+		for (Map.Entry<Class<? extends Entity>, List<Integer>> entry : byClass.entrySet()) {
+			MongoCollection<Entity> coll = (MongoCollection<Entity>) getCollection(entry.getKey());
+			for (List<Integer> batch : Lists.partition(entry.getValue(), BULK_BATCH_SIZE)) {
+				List<WriteModel<Entity>> models = Lists.newArrayList();
+				List<Integer> written = Lists.newArrayList();
+				for (int position : batch) {
+					EntityInvocationHandler handler = EntityInvocationHandler.getHandler(all.get(position));
+					List<ParameterProperty> modified = handler.getModifiedProperties();
+					if (modified.isEmpty() && handler.persisted) {
+						// new entities are written even without any property set
+						result.setOutcome(position, SaveResult.Outcome.UNCHANGED);
+					} else {
+						models.add(EntityInvocationHandler.prepareSave(handler, coll, modified));
+						written.add(position);
+					}
+				}
+				if (models.isEmpty()) {
+					continue;
+				}
+				Instrumentation instrumentation = this.instrumentation;
+				long start = instrumentation.start(entry.getKey(), Operation.BULK_WRITE);
+				try {
+					BulkWriteResult res = coll.bulkWrite(models, new BulkWriteOptions().ordered(ordered));
+					markSaved(coll, all, result, models, written, written, res);
+				} catch (MongoBulkWriteException e) {
+					List<Integer> saved = Lists.newArrayList(written);
+					for (BulkWriteError error : e.getWriteErrors()) {
+						result.setError(written.get(error.getIndex()), error);
+						saved.remove(written.get(error.getIndex()));
+					}
+					if (ordered) {
+						// ordered writes stop with the first error, everything after it wasn't executed
+						int first = e.getWriteErrors().get(0).getIndex();
+						markSaved(coll, all, result, models, written, written.subList(0, first), e.getWriteResult());
+						return result;
+					}
+					markSaved(coll, all, result, models, written, saved, e.getWriteResult());
+				} finally {
+					instrumentation.stop(entry.getKey(), Operation.BULK_WRITE, start);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * marks the entities at the given positions as saved, unless their partial update didn't match any document as the
+	 * entity was removed from MongoDB meanwhile. Those are marked as not found instead
+	 *
+	 * @param models
+	 *            write operations of the batch
+	 * @param written
+	 *            positions of the entities written by the batch, in the order of the write operations
+	 * @param executed
+	 *            positions of the entities written successfully
+	 * @param res
+	 *            result of the bulk write
+	 */
+	@SuppressWarnings("unchecked")
+	private static void markSaved(MongoCollection<Entity> coll, List<Entity> entities, SaveResult result,
+			List<WriteModel<Entity>> models, List<Integer> written, List<Integer> executed, BulkWriteResult res) {
+		Set<Integer> succeeded = new HashSet<>(executed);
+		Map<Object, Integer> partial = Maps.newLinkedHashMap();
+		int updates = 0;
+		for (int i = 0; i < written.size(); i++) {
+			if (!succeeded.contains(written.get(i)) || !(models.get(i) instanceof UpdateOneModel)) {
+				continue;
+			}
+			updates++;
+			if (!((UpdateOneModel<Entity>) models.get(i)).getOptions().isUpsert()) {
+				partial.put(EntityInvocationHandler.getHandler(entities.get(written.get(i))).getId(), written.get(i));
+			}
+		}
+		if (!partial.isEmpty() && res != null && res.wasAcknowledged()
+				&& res.getMatchedCount() < updates - res.getUpserts().size()) {
+			// some partial updates didn't match, so find out which entities are gone
+			Set<Object> existing = new HashSet<>();
+			for (Document doc : coll.withDocumentClass(Document.class).find(
+					new Document(Entity.ID, new Document("$in", Lists.newArrayList(partial.keySet())))).projection(
+					new Document(Entity.ID, 1))) {
+				existing.add(doc.get(Entity.ID));
+			}
+			for (Map.Entry<Object, Integer> entry : partial.entrySet()) {
+				if (!existing.contains(entry.getKey())) {
+					LOG.debug("Entity with id {} of class {} vanished, not inserting it again", entry.getKey(),
+							entities.get(entry.getValue()).entityClass());
+					result.setOutcome(entry.getValue(), SaveResult.Outcome.NOT_FOUND);
+					succeeded.remove(entry.getValue());
+				}
+			}
+		}
+		for (int position : executed) {
+			if (succeeded.contains(position)) {
+				EntityInvocationHandler.getHandler(entities.get(position)).saved();
+				result.setOutcome(position, SaveResult.Outcome.SAVED);
+			}
+		}
+	}
 }
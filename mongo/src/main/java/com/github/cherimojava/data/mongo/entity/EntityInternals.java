@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import org.bson.RawBsonDocument;
+
+import com.github.cherimojava.data.mongo.io.EntityCodec;
+
+/**
+ * Bridge through which the codecs of the io package access the internal state of entities while de- and encoding
+ * them. Not meant to be used outside of cherimodata, as it bypasses validation and modification tracking of entities
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class EntityInternals {
+	/**
+	 * Utility class no Need for Instance
+	 */
+	private EntityInternals() {
+	}
+
+	/**
+	 * marks an entity as freshly loaded from MongoDB. The entity is persisted and has no modifications afterwards
+	 *
+	 * @param e
+	 *            entity which was loaded
+	 */
+	public static void loaded(Entity e) {
+		EntityInvocationHandler.getHandler(e).loaded();
+	}
+
+	/**
+	 * marks a freshly loaded entity as partially loaded, only the properties of the given projection were loaded
+	 *
+	 * @param e
+	 *            entity which was loaded
+	 * @param projection
+	 *            projection through which the entity was loaded
+	 */
+	public static void loadedPartially(Entity e, Projection projection) {
+		EntityInvocationHandler.getHandler(e).partial(projection);
+	}
+
+	/**
+	 * marks a freshly created entity as decoded lazily from the given raw document, properties are decoded through the
+	 * given codec once they're accessed
+	 *
+	 * @param e
+	 *            entity which was loaded
+	 * @param raw
+	 *            raw document the entity was loaded from
+	 * @param codec
+	 *            codec decoding the properties from the raw document
+	 */
+	public static void decodeLazily(Entity e, RawBsonDocument raw, EntityCodec codec) {
+		EntityInvocationHandler.getHandler(e).decodeLazily(raw, codec);
+	}
+
+	/**
+	 * stores the value decoded from the raw document of a lazily decoded entity, without validating it or marking it as
+	 * modified
+	 *
+	 * @param e
+	 *            entity to store the value in
+	 * @param pp
+	 *            property the value belongs to
+	 * @param value
+	 *            decoded value
+	 */
+	public static void putDecoded(Entity e, ParameterProperty pp, Object value) {
+		EntityInvocationHandler.getHandler(e).putDecoded(pp, value);
+	}
+
+	/**
+	 * stores the raw bits decoded from the raw document of a lazily decoded entity for the given primitive property
+	 *
+	 * @param e
+	 *            entity to store the value in
+	 * @param pp
+	 *            primitive property the value belongs to
+	 * @param bits
+	 *            raw bits of the value
+	 */
+	public static void putDecodedPrimitive(Entity e, ParameterProperty pp, long bits) {
+		EntityInvocationHandler.getHandler(e).putDecodedPrimitive(pp, bits);
+	}
+
+	/**
+	 * returns the current value of the given property of the entity. Other than {@link Entity#get(String)} this
+	 * doesn't mark mutable values as possibly modified, so this is meant for reading only
+	 *
+	 * @param e
+	 *            entity to read from
+	 * @param pp
+	 *            property of the entity
+	 * @return current value of the property
+	 */
+	public static Object getValue(Entity e, ParameterProperty pp) {
+		return EntityInvocationHandler.getHandler(e).getValue(pp);
+	}
+
+	/**
+	 * sets the given primitive property of the entity from its raw bits, without boxing it. Encoding of bits matches
+	 * {@link EntityUtils#getPrimitive(Entity, ParameterProperty)}
+	 *
+	 * @param e
+	 *            entity to modify
+	 * @param pp
+	 *            primitive property of the entity
+	 * @param bits
+	 *            raw bits of the new value
+	 */
+	public static void setPrimitive(Entity e, ParameterProperty pp, long bits) {
+		EntityInvocationHandler.getHandler(e).putPrimitive(pp, bits);
+	}
+}
@@ -25,13 +25,21 @@ import static java.lang.String.format;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
 import org.bson.BsonDocumentWrapper;
+import org.bson.BsonString;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.codecs.ValueCodecProvider;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
@@ -39,10 +47,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.cherimojava.data.mongo.io.EntityCodec;
+import com.github.cherimojava.data.mongo.metrics.Instrumentation;
+import com.github.cherimojava.data.mongo.metrics.Operation;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.UpdateResult;
 
 /**
@@ -59,6 +74,17 @@ class EntityInvocationHandler implements InvocationHandler {
 	/* registry containing information about codecs for encoding ids */
 	private static CodecRegistry idRegistry = CodecRegistries.fromProviders(new ValueCodecProvider());
 
+	/**
+	 * maximum number of ids queried at once while loading multiple entities
+	 */
+	static final int LOAD_BATCH_SIZE = 1000;
+
+	/**
+	 * marker placed into the data slot of primitive properties which currently hold a value. The value itself lives
+	 * within {@link #primitives}
+	 */
+	private static final Object PRIMITIVE = new Object();
+
 	/**
 	 * holds the properties backing this entity class
 	 */
@@ -91,15 +117,89 @@ class EntityInvocationHandler implements InvocationHandler {
 	 */
 	private boolean lazy = false;
 
+	/**
+	 * ordinals of the properties loaded, if this entity is partially loaded through a projection. null if the entity
+	 * is either loaded completely or not at all
+	 */
+	private BitSet available;
+
+	/**
+	 * true if accessing a property not loaded of a partially loaded entity shall fail instead of loading the remaining
+	 * properties
+	 */
+	private boolean strict = false;
+
+	/**
+	 * raw document this entity was loaded from, if the entity class is decoded lazily. Null otherwise
+	 */
+	private RawBsonDocument raw;
+
+	/**
+	 * ordinals of the properties not yet decoded from the raw document
+	 */
+	private BitSet undecoded;
+
+	/**
+	 * codec decoding properties from the raw document
+	 */
+	private EntityCodec rawCodec;
+
+	/**
+	 * identity map of the factory which created this entity, null if the factory has none
+	 */
+	private IdentityMap identityMap;
+
+	/**
+	 * cache of the factory which created this entity for the entity class, null if the entity class isn't cached
+	 */
+	private EntityCache cache;
+
+	/**
+	 * when this entity validates its properties
+	 */
+	private ValidationMode validationMode;
+
+	/**
+	 * receives timings of the operations executed by this entity
+	 */
+	private Instrumentation instrumentation = Instrumentation.NONE;
+
+	/**
+	 * entity this entity is embedded in, null if this entity isn't embedded or wasn't created as embedded entity
+	 */
+	private EntityInvocationHandler parent;
+
 	/**
 	 * will be true if the entity is in the process of being saved, false otherwise
 	 */
 	private volatile boolean saving = false;
 
 	/**
-	 * holds the actual data of the Entity
+	 * holds the actual data of the Entity, each property value is stored at the position of the property ordinal
+	 */
+	Object[] data;
+
+	/**
+	 * holds the raw bits of primitive property values, each at the position of the property ordinal. Null if the entity
+	 * class has no primitive properties
 	 */
-	Map<String, Object> data;
+	long[] primitives;
+
+	/**
+	 * properties (by ordinal) which were set since the entity was loaded or saved the last time
+	 */
+	private final BitSet dirty = new BitSet();
+
+	/**
+	 * properties (by ordinal) holding mutable values which were handed out or in since the entity was loaded. As they
+	 * might have been modified without notice, they're written on each save
+	 */
+	private final BitSet exposed = new BitSet();
+
+	/**
+	 * will be true while this entity checks itself for modifications, used to break cycles between embedded entities
+	 */
+	private boolean checking = false;
 
 	/**
 	 * creates a new Handler for the given EntityProperties (Entity class). No Mongo reference will be created meaning
@@ -123,8 +223,11 @@ class EntityInvocationHandler implements InvocationHandler {
 	 */
 	public EntityInvocationHandler(EntityProperties properties, MongoCollection collection) {
 		this.properties = properties;
-		data = Maps.newHashMap();
+		data = new Object[properties.getProperties().size()];
+		primitives = properties.hasPrimitiveProperties() ? new long[data.length] : null;
 		this.collection = collection;
+		validationMode = properties.getValidationMode() != null ? properties.getValidationMode()
+				: ValidationMode.ON_SET;
 	}
 
 	/**
@@ -138,16 +241,274 @@ class EntityInvocationHandler implements InvocationHandler {
 	public EntityInvocationHandler(EntityProperties properties, MongoCollection collection, Object id) {
 		this(properties, collection);
 		lazy = true;
-		_put(properties.getProperty(Entity.ID), id);
+		_put(properties.getIdProperty(), id);
+	}
+
+	/**
+	 * actual method which is invoked once the lazy entity is about to be filled with life. Partially loaded entities
+	 * aren't loaded, as the requested action doesn't depend on a specific property
+	 */
+	void lazyLoad() {
+		if (lazy && available == null) {
+			load();
+		}
+	}
+
+	/**
+	 * loads the lazy entity if the given property isn't loaded yet. Fails for partially loaded entities in strict mode.
+	 * Transient and computed properties aren't stored, so they never cause a load on their own
+	 *
+	 * @param pp
+	 *            property about to be accessed
+	 */
+	private void lazyLoad(ParameterProperty pp) {
+		if (pp.isTransient() || pp.isComputed()) {
+			return;
+		}
+		if (lazy && (available == null || !available.get(pp.getOrdinal()))) {
+			checkState(available == null || !strict,
+					"Property %s of Entity %s with id %s wasn't loaded by the projection", pp.getMongoName(),
+					properties.getEntityClass(), getId());
+			load();
+		}
+	}
+
+	private void load() {
+		long start = instrumentation.start(properties.getEntityClass(), Operation.LAZY_LOAD);
+		try {
+			Entity loaded = cache != null ? cache.find(collection, getId()) : find(collection, getId());
+			resolve(loaded != null ? getHandler(loaded) : null);
+		} finally {
+			instrumentation.stop(properties.getEntityClass(), Operation.LAZY_LOAD, start);
+		}
+	}
+
+	/**
+	 * marks this freshly loaded entity as partially loaded, only the properties included in the given projection are
+	 * available
+	 *
+	 * @param projection
+	 *            projection through which this entity was loaded
+	 */
+	void partial(Projection projection) {
+		available = projection.toOrdinals(properties);
+		strict = projection.isStrict();
+		lazy = true;
 	}
 
 	/**
-	 * actual method which is invoked once the lazy entity is about to be filled with life
+	 * returns if this entity is only partially loaded
 	 */
-	private void lazyLoad() {
-		if (lazy) {
-			data = ((EntityInvocationHandler) Proxy.getInvocationHandler(find(collection, data.get(ID)))).data;
-			lazy = false;
+	boolean isPartial() {
+		return available != null;
+	}
+
+	/**
+	 * marks this freshly created entity as decoded lazily from the given raw document. Properties are decoded once
+	 * they're accessed, the id is decoded right away
+	 *
+	 * @param raw
+	 *            raw document this entity was loaded from
+	 * @param codec
+	 *            codec decoding the properties from the raw document
+	 */
+	void decodeLazily(RawBsonDocument raw, EntityCodec codec) {
+		this.raw = raw;
+		rawCodec = codec;
+		undecoded = new BitSet(data.length);
+		for (ParameterProperty pp : properties.getProperties()) {
+			if (!pp.isTransient() && !pp.isComputed()) {
+				undecoded.set(pp.getOrdinal());
+			}
+		}
+		decode(properties.getIdProperty());
+	}
+
+	/**
+	 * decodes the given property from the raw document, if it's not yet decoded
+	 */
+	@SuppressWarnings("unchecked")
+	private void decode(ParameterProperty pp) {
+		if (undecoded != null && undecoded.get(pp.getOrdinal())) {
+			undecoded.clear(pp.getOrdinal());
+			rawCodec.decodeProperty(proxy, raw, pp);
+		}
+	}
+
+	/**
+	 * decodes all properties not yet decoded from the raw document
+	 */
+	private void decodeAll() {
+		if (undecoded != null) {
+			for (int ordinal = undecoded.nextSetBit(0); ordinal >= 0; ordinal = undecoded.nextSetBit(ordinal + 1)) {
+				decode(properties.getProperties().get(ordinal));
+			}
+		}
+	}
+
+	/**
+	 * returns if the given property was decoded already, properties of entities not decoded lazily are always
+	 * decoded
+	 */
+	boolean isDecoded(ParameterProperty pp) {
+		return undecoded == null || !undecoded.get(pp.getOrdinal());
+	}
+
+	/**
+	 * returns the raw document this entity was loaded from, null if the entity class isn't decoded lazily
+	 */
+	RawBsonDocument getRaw() {
+		return raw;
+	}
+
+	/**
+	 * stores the value decoded from the raw document for the given property. As the value comes from MongoDB it's
+	 * neither validated nor marked as modified
+	 */
+	void putDecoded(ParameterProperty pp, Object value) {
+		markKnown(pp);
+		store(pp, value);
+	}
+
+	/**
+	 * stores the raw bits decoded from the raw document for the given primitive property
+	 */
+	void putDecodedPrimitive(ParameterProperty pp, long bits) {
+		markKnown(pp);
+		storePrimitive(pp, bits);
+	}
+
+	/**
+	 * returns if the value of the given property is known, meaning it's loaded (if this entity is partial) and
+	 * decoded (if this entity is decoded lazily)
+	 */
+	private boolean isKnown(ParameterProperty pp) {
+		return (available == null || available.get(pp.getOrdinal())) && isDecoded(pp);
+	}
+
+	/**
+	 * marks the value of the given property as known, as it was either set or decoded. So it's as good as loaded and
+	 * decoded
+	 */
+	private void markKnown(ParameterProperty pp) {
+		if (available != null) {
+			available.set(pp.getOrdinal());
+		}
+		if (undecoded != null) {
+			undecoded.clear(pp.getOrdinal());
+		}
+	}
+
+	/**
+	 * stores the given value for the given property, primitive values are stored as their raw bits
+	 */
+	private void store(ParameterProperty pp, Object value) {
+		if (pp.isPrimitive() && value != null) {
+			storePrimitive(pp, toBits(pp, value));
+		} else {
+			data[pp.getOrdinal()] = value;
+			if (pp.isPrimitive()) {
+				// don't keep stale bits around, they'd be taken into account by equals and hashCode otherwise
+				primitives[pp.getOrdinal()] = 0;
+			}
+		}
+	}
+
+	/**
+	 * stores the raw bits of the given primitive property
+	 */
+	private void storePrimitive(ParameterProperty pp, long bits) {
+		primitives[pp.getOrdinal()] = bits;
+		data[pp.getOrdinal()] = PRIMITIVE;
+	}
+
+	/**
+	 * fills this lazy entity with the data of the given handler, which was loaded for the id of this entity. If no
+	 * entity was found for the id (handler is null) this entity will only contain its id. If the given handler was
+	 * loaded through a projection this entity only takes the properties it's missing and stays partially loaded. Does
+	 * nothing if this entity isn't lazy (anymore)
+	 *
+	 * @param loaded
+	 *            handler of the entity loaded for this entities id, might be null
+	 */
+	void resolve(EntityInvocationHandler loaded) {
+		if (!lazy) {
+			return;
+		}
+		if (loaded != null && loaded.isPartial()) {
+			// a projection doesn't contain all properties, so this entity stays partial until it's loaded completely
+			resolvePartially(loaded);
+			return;
+		}
+		lazy = false;
+		if (available != null) {
+			// keep the properties already loaded, they might be modified
+			if (loaded != null) {
+				BitSet missing = (BitSet) available.clone();
+				missing.flip(0, data.length);
+				take(loaded, missing);
+			}
+			available = null;
+		} else if (loaded != null) {
+			data = loaded.data;
+			primitives = loaded.primitives;
+			raw = loaded.raw;
+			undecoded = loaded.undecoded;
+			rawCodec = loaded.rawCodec;
+			loaded();
+		} else {
+			LOG.debug("No entity of class {} with id {} found, entity contains only its id",
+					properties.getEntityClass(), getId());
+			dirty.clear();
+		}
+	}
+
+	/**
+	 * fills this lazy entity with the properties of the given partially loaded entity, which aren't loaded yet. This
+	 * entity is partially loaded afterwards, holding the properties of both projections
+	 *
+	 * @param loaded
+	 *            handler of the entity partially loaded for this entities id
+	 */
+	private void resolvePartially(EntityInvocationHandler loaded) {
+		if (available == null) {
+			// nothing loaded yet besides the id, so take everything the projection loaded
+			data = loaded.data;
+			primitives = loaded.primitives;
+			raw = loaded.raw;
+			undecoded = loaded.undecoded;
+			rawCodec = loaded.rawCodec;
+			available = (BitSet) loaded.available.clone();
+			loaded();
+			return;
+		}
+		// keep the properties already loaded, they might be modified
+		BitSet missing = (BitSet) loaded.available.clone();
+		missing.andNot(available);
+		take(loaded, missing);
+		available.or(missing);
+	}
+
+	/**
+	 * copies the values of the given properties from the given handler, which was loaded for the id of this entity
+	 *
+	 * @param loaded
+	 *            handler of the entity loaded for this entities id
+	 * @param ordinals
+	 *            ordinals of the properties to copy
+	 */
+	private void take(EntityInvocationHandler loaded, BitSet ordinals) {
+		loaded.decodeAll();
+		for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0 && ordinal < data.length; ordinal = ordinals
+				.nextSetBit(ordinal + 1)) {
+			data[ordinal] = loaded.data[ordinal];
+			if (primitives != null) {
+				primitives[ordinal] = loaded.primitives[ordinal];
+			}
+		}
+		if (undecoded != null) {
+			// the raw document of this entity doesn't contain the copied values
+			undecoded.andNot(ordinals);
 		}
 	}
 
@@ -157,22 +518,45 @@ class EntityInvocationHandler implements InvocationHandler {
 	 */
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		String methodName = method.getName();
+		EntityMethod em = properties.getMethod(method);
+		if (em == null) {
+			// not using checkState here, its varargs would allocate an array on every invocation
+			throw new IllegalStateException(format("Method %s isn't known for Entity %s", method.getName(),
+					properties.getEntityClass()));
+		}
 		ParameterProperty pp;
 
-		switch (methodName) {
-		case "get":
+		switch (em.getAction()) {
+		case GET:
+			lazyLoad(em.getProperty());
+			return expose(em.getProperty(), _get(em.getProperty()));
+		case SET:
+			lazyLoad();
+			_put(em.getProperty(), args[0]);
+			// if we want this to be fluent we need to return this
+			return em.isFluent() ? proxy : null;
+		case ADD:
+			lazyLoad(em.getProperty());
+			// for now we know that there's only one parameter
+			_add(em.getProperty(), args[0]);
+			// if we want this to be fluent we need to return this
+			return em.isFluent() ? proxy : null;
+		case GET_PROPERTY:
 			pp = checkPropertyExists((String) args[0]);
 			if (!ID.equals(pp.getMongoName())) {
 				// lazy loading isn't needed for the ID itself
-				lazyLoad();
+				lazyLoad(pp);
 			}
-			return _get(pp);// we know that this is a string param
-		case "set":
+			return expose(pp, _get(pp));// we know that this is a string param
+		case SET_PROPERTY:
 			lazyLoad();
 			_put(checkPropertyExists((String) args[0]), args[1]);
 			return proxy;
-		case "save":
+		case SAVE:
+			if (collection == null && parent != null) {
+				// embedded entities are stored along with the entity they're embedded in
+				return parent.invoke(parent.proxy, method, args);
+			}
 			checkState(collection != null,
 					"Entity was created without MongoDB reference. You have to save the entity through an EntityFactory");
 			lazyLoad();
@@ -181,64 +565,64 @@ class EntityInvocationHandler implements InvocationHandler {
 				// TODO create for accessable Id some way to get it validated through validator
 				if (properties.hasExplicitId()) {
 					// TODO we can release this if it's of type ObjectId
-					checkNotNull(data.get(ID), "An explicit defined Id must be set before saving");
+					checkNotNull(getId(), "An explicit defined Id must be set before saving");
+				}
+				try {
+					return save(this, collection);
+				} finally {
+					// we're done with saving, also if saving failed. Next save isn't coming from within this instance
+					saving = false;
 				}
-				save(this, collection);
-				// change state only after successful saving to Mongo
-				saving = false;// we're done with saving next one, can write object. Which isn't coming from within this
-								// instance
-				return true;
 			} else {
-				LOG.info("Did not save Entity with id {} of class {} as it's cyclic called.", data.get(ID),
+				LOG.info("Did not save Entity with id {} of class {} as it's cyclic called.", getId(),
 						properties.getEntityClass());
 				return false;
 			}
-		case "drop":
+		case DROP:
 			checkState(collection != null,
 					"Entity was created without MongoDB reference. You have to drop the entity through an EntityFactory");
 			drop(this, collection);
+			dropped();
 			return null;
-		case "equals":
+		case EQUALS:
 			lazyLoad();
 			return _equals(args[0]);
-		case "seal":
+		case SEAL:
 			sealed = true;
 			return null;
-		case "entityClass":
+		case ENTITY_CLASS:
 			return properties.getEntityClass();
-		case "toString":
+		case TO_STRING:
 			lazyLoad();
 			return _toString();
-		case "hashCode":
+		case HASH_CODE:
 			lazyLoad();
 			return _hashCode();
-		case "load":
+		case LOAD:
 			checkState(collection != null,
 					"Entity was created without MongoDB reference. You have to load entities through an EntityFactory");
-			return find(collection, args[0]);
-		}
-
-		lazyLoad();
-		pp = properties.getProperty(method);
-		if (methodName.startsWith("get")) {
-			return _get(pp);
-		}
-		if (methodName.startsWith("set")) {
-			_put(pp, args[0]);
-			// if we want this to be fluent we need to return this
-			if (pp.isFluent(ParameterProperty.MethodType.SETTER)) {
-				return proxy;
+			if (identityMap != null) {
+				Entity loaded = identityMap.getLoaded(properties.getEntityClass(), args[0]);
+				if (loaded != null) {
+					return loaded;
+				}
 			}
-		}
-		if (methodName.startsWith("add")) {
-			// for now we know that there's only one parameter
-			_add(pp, args[0]);
-			// if we want this to be fluent we need to return this
-			if (pp.isFluent(ParameterProperty.MethodType.ADDER)) {
-				return proxy;
+			long start = instrumentation.start(properties.getEntityClass(), Operation.LOAD);
+			try {
+				return cache != null ? cache.find(collection, args[0]) : find(collection, args[0]);
+			} finally {
+				instrumentation.stop(properties.getEntityClass(), Operation.LOAD, start);
 			}
+		default:
+			return null;
 		}
-		return null;
+	}
+
+	/**
+	 * returns the currently assigned id of this entity
+	 */
+	Object getId() {
+		return _value(properties.getIdProperty());
 	}
 
 	/**
@@ -280,12 +664,14 @@ class EntityInvocationHandler implements InvocationHandler {
 	@SuppressWarnings("unchecked")
 	private void _add(ParameterProperty pp, Object value) {
 		checkNotSealed();
-		if (data.get(pp.getMongoName()) == null) {
+		decode(pp);
+		dirty.set(pp.getOrdinal());
+		if (data[pp.getOrdinal()] == null) {
 			try {
 				if (getDefaultClass(pp.getType()) != null) {
 					Collection coll = (Collection) getDefaultClass(pp.getType()).newInstance();
 					coll.add(value);
-					data.put(pp.getMongoName(), coll);
+					data[pp.getOrdinal()] = coll;
 				} else {
 					throw new IllegalStateException(format(
 							"Property is of interface %s, but no suitable implementation was registered", pp.getType()));
@@ -294,7 +680,7 @@ class EntityInvocationHandler implements InvocationHandler {
 				throw new IllegalStateException("The impossible happened. Could not instantiate Class", e);
 			}
 		} else {
-			((Collection) data.get(pp.getMongoName())).add(value);
+			((Collection) data[pp.getOrdinal()]).add(value);
 		}
 	}
 
@@ -311,8 +697,99 @@ class EntityInvocationHandler implements InvocationHandler {
 	private void _put(ParameterProperty pp, Object value) {
 		checkNotSealed();
 		checkNotFinal(pp);
-		pp.validate(value);
-		data.put(pp.getMongoName(), value);
+		if (validationMode == ValidationMode.ON_SET) {
+			validate(pp, value);
+		} else {
+			pp.checkType(value);
+		}
+		if (isKnown(pp) && !pp.isMutable() && unchanged(pp, _value(pp), value)) {
+			// nothing changed, so there's no need to mark this property as modified
+			return;
+		}
+		dirty.set(pp.getOrdinal());
+		markKnown(pp);
+		expose(pp, value);
+		store(pp, value);
+	}
+
+	/**
+	 * returns if the given new value of the given immutable property equals its current value. Single references are
+	 * only stored by id, so they're compared by entity class and id. Comparing them through equals would load lazy
+	 * references
+	 */
+	private static boolean unchanged(ParameterProperty pp, Object current, Object value) {
+		if (!pp.isReference() || current == value || current == null || value == null) {
+			return Objects.equals(current, value);
+		}
+		EntityInvocationHandler currentHandler = getHandler((Entity) current);
+		EntityInvocationHandler valueHandler = getHandler((Entity) value);
+		Object id = currentHandler.getId();
+		return id != null && currentHandler.properties.getEntityClass().equals(valueHandler.properties.getEntityClass())
+				&& id.equals(valueHandler.getId());
+	}
+
+	/**
+	 * validates the given value of the given property
+	 */
+	private void validate(ParameterProperty pp, Object value) {
+		long start = instrumentation.start(properties.getEntityClass(), Operation.VALIDATE);
+		try {
+			pp.validate(value);
+		} finally {
+			instrumentation.stop(properties.getEntityClass(), Operation.VALIDATE, start);
+		}
+	}
+
+	/**
+	 * Does put operation for primitive properties, taking the raw bits of the value. Performs the same checks as
+	 * {@link #_put(ParameterProperty, Object)}, the value is only boxed if the property has constraints to validate
+	 *
+	 * @param pp
+	 *            primitive property to set
+	 * @param bits
+	 *            raw bits of the new value
+	 */
+	void putPrimitive(ParameterProperty pp, long bits) {
+		checkArgument(pp.isPrimitive(), "Property %s isn't primitive", pp.getPojoName());
+		checkNotSealed();
+		checkNotFinal(pp);
+		if (pp.hasConstraints() && validationMode == ValidationMode.ON_SET) {
+			validate(pp, fromBits(pp, bits));
+		}
+		if (isKnown(pp) && data[pp.getOrdinal()] == PRIMITIVE && primitives[pp.getOrdinal()] == bits) {
+			// nothing changed, so there's no need to mark this property as modified
+			return;
+		}
+		dirty.set(pp.getOrdinal());
+		markKnown(pp);
+		storePrimitive(pp, bits);
+	}
+
+	/**
+	 * returns if the given primitive property currently holds a value
+	 *
+	 * @param pp
+	 *            primitive property to check
+	 * @return true if the property is set, false otherwise
+	 */
+	boolean hasPrimitive(ParameterProperty pp) {
+		lazyLoad();
+		decode(pp);
+		return data[pp.getOrdinal()] == PRIMITIVE;
+	}
+
+	/**
+	 * returns the raw bits of the given primitive property. Only meaningful if
+	 * {@link #hasPrimitive(ParameterProperty)} returns true
+	 *
+	 * @param pp
+	 *            primitive property to get the value from
+	 * @return raw bits of the property value
+	 */
+	long getPrimitive(ParameterProperty pp) {
+		lazyLoad();
+		decode(pp);
+		return primitives[pp.getOrdinal()];
 	}
 
 	/**
@@ -329,7 +806,135 @@ class EntityInvocationHandler implements InvocationHandler {
 			// if this property is computed we need to calculate the value for it
 			return property.getComputer().compute(proxy);
 		} else {
-			return data.get(property.getMongoName());
+			return _value(property);
+		}
+	}
+
+	/**
+	 * Returns the currently assigned value for the given Property without marking it as exposed. Meant for internal
+	 * components like codecs, which don't modify the value
+	 *
+	 * @param property
+	 *            to get value from
+	 * @return value of the property or null if the property isn't set
+	 */
+	Object getValue(ParameterProperty property) {
+		lazyLoad();
+		return _get(property);
+	}
+
+	/**
+	 * marks the given property as exposed if the value is mutable, as it might be changed without the entity noticing
+	 *
+	 * @param pp
+	 *            property the value belongs to
+	 * @param value
+	 *            value of the property
+	 * @return the given value
+	 */
+	private Object expose(ParameterProperty pp, Object value) {
+		if (value != null && pp.isMutable() && !pp.isComputed() && !(value instanceof Entity)) {
+			// embedded entities track their modifications on their own
+			exposed.set(pp.getOrdinal());
+		}
+		return value;
+	}
+
+	/**
+	 * returns the properties which were modified since the entity was loaded or saved the last time. Transient and
+	 * computed properties are never considered modified
+	 *
+	 * @return list of modified properties, empty if nothing was modified
+	 */
+	List<ParameterProperty> getModifiedProperties() {
+		List<ParameterProperty> modified = Lists.newArrayList();
+		for (ParameterProperty pp : properties.getProperties()) {
+			if (pp.isTransient() || pp.isComputed()) {
+				continue;
+			}
+			int ordinal = pp.getOrdinal();
+			if (dirty.get(ordinal) || exposed.get(ordinal) || (!pp.isReference() && isModified(data[ordinal]))) {
+				modified.add(pp);
+			}
+		}
+		return modified;
+	}
+
+	/**
+	 * checks if the given value is an embedded entity, or a collection of such, which was modified
+	 *
+	 * @param value
+	 *            value to check
+	 * @return true if the value contains a modified entity, false otherwise
+	 */
+	private static boolean isModified(Object value) {
+		if (value instanceof Entity) {
+			EntityInvocationHandler handler = getHandler((Entity) value);
+			if (handler.checking) {
+				// we're already checking this entity, so we're within a cycle
+				return false;
+			}
+			handler.checking = true;
+			try {
+				return !handler.getModifiedProperties().isEmpty();
+			} finally {
+				handler.checking = false;
+			}
+		} else if (value instanceof Collection) {
+			for (Object o : (Collection) value) {
+				if (!(o instanceof Entity)) {
+					// collections are homogeneous, so there are no entities in here
+					return false;
+				}
+				if (isModified(o)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the stored value for the given Property or null if the property currently isn't set. Primitive values
+	 * are boxed
+	 *
+	 * @param property
+	 *            to get value from
+	 * @return stored value of the property
+	 */
+	private Object _value(ParameterProperty property) {
+		decode(property);
+		Object value = data[property.getOrdinal()];
+		return value == PRIMITIVE ? fromBits(property, primitives[property.getOrdinal()]) : value;
+	}
+
+	/**
+	 * converts the given boxed value of a primitive property into its raw bits
+	 */
+	private static long toBits(ParameterProperty pp, Object value) {
+		Class<?> type = pp.getPrimitiveType();
+		if (type == int.class || type == long.class) {
+			return ((Number) value).longValue();
+		} else if (type == double.class) {
+			return Double.doubleToRawLongBits((Double) value);
+		} else {
+			return ((Boolean) value) ? 1 : 0;
+		}
+	}
+
+	/**
+	 * converts the raw bits of a primitive property back into its boxed value
+	 */
+	private static Object fromBits(ParameterProperty pp, long bits) {
+		Class<?> type = pp.getPrimitiveType();
+		if (type == int.class) {
+			return (int) bits;
+		} else if (type == long.class) {
+			return bits;
+		} else if (type == double.class) {
+			return Double.longBitsToDouble(bits);
+		} else {
+			return bits != 0;
 		}
 	}
 
@@ -363,6 +968,10 @@ class EntityInvocationHandler implements InvocationHandler {
 			return false;
 		}
 		EntityInvocationHandler handler = (EntityInvocationHandler) ihandler;
+		if (handler == this) {
+			// same entity, no need to load or decode anything
+			return true;
+		}
 		if (!handler.properties.getEntityClass().equals(properties.getEntityClass())) {
 			// this is not the same entity class, so false
 			return false;
@@ -370,7 +979,22 @@ class EntityInvocationHandler implements InvocationHandler {
 		// make sure both have all lazy dependencies resolved
 		lazyLoad();
 		handler.lazyLoad();
-		return data.equals(handler.data);
+		// compare ids first, differing ids are the common case and this stops recursion on cyclic references
+		if (!Objects.equals(getId(), handler.getId())) {
+			return false;
+		}
+		decodeAll();
+		handler.decodeAll();
+		if (!Arrays.equals(data, handler.data)) {
+			return false;
+		}
+		// only the slots holding a primitive value are meaningful, both entities have the same slots marked by now
+		for (int ordinal = 0; ordinal < data.length; ordinal++) {
+			if (data[ordinal] == PRIMITIVE && primitives[ordinal] != handler.primitives[ordinal]) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -379,9 +1003,13 @@ class EntityInvocationHandler implements InvocationHandler {
 	 * @return hashCode of this Entity
 	 */
 	private int _hashCode() {
+		decodeAll();
 		HashCodeBuilder hcb = new HashCodeBuilder();
-		for (Object key : data.values()) {
-			hcb.append(key);
+		for (int ordinal = 0; ordinal < data.length; ordinal++) {
+			hcb.append(data[ordinal]);
+			if (data[ordinal] == PRIMITIVE) {
+				hcb.append(primitives[ordinal]);
+			}
 		}
 		return hcb.build();
 	}
@@ -392,8 +1020,9 @@ class EntityInvocationHandler implements InvocationHandler {
 	 *
 	 * @return JSON representation of the Entity
 	 */
+	@SuppressWarnings("unchecked")
 	private String _toString() {
-		return new EntityCodec<>(null, properties).asString(proxy);
+		return EntityFactory.forDatabase(null).getCodec((Class<Entity>) properties.getEntityClass()).asString(proxy);
 	}
 
 	/**
@@ -403,22 +1032,188 @@ class EntityInvocationHandler implements InvocationHandler {
 	 *            EntityInvocationHandler (Entity) to save
 	 * @param coll
 	 *            MongoCollection to save entity into
+	 * @return true if the entity was saved, false if it had no modifications to save
+	 */
+	static <T extends Entity> boolean save(EntityInvocationHandler handler, MongoCollection<T> coll) {
+		Instrumentation instrumentation = handler.instrumentation;
+		Class<? extends Entity> clazz = handler.properties.getEntityClass();
+		long start = instrumentation.start(clazz, Operation.SAVE);
+		try {
+			return _save(handler, coll);
+		} finally {
+			instrumentation.stop(clazz, Operation.SAVE, start);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Entity> boolean _save(EntityInvocationHandler handler, MongoCollection<T> coll) {
+		List<ParameterProperty> modified = handler.getModifiedProperties();
+		if (modified.isEmpty() && handler.persisted) {
+			// new entities are written even without any property set, otherwise they'd never be stored
+			LOG.debug("Entity with id {} of class {} has no modifications, nothing to save", handler.getId(),
+					handler.properties.getEntityClass());
+			return false;
+		}
+		validate(handler);
+		WriteModel<T> model = prepareSave(handler, coll, modified);
+		Instrumentation instrumentation = handler.instrumentation;
+		Class<? extends Entity> clazz = handler.properties.getEntityClass();
+		if (model instanceof InsertOneModel) {
+			long start = instrumentation.start(clazz, Operation.INSERT);
+			try {
+				coll.insertOne(((InsertOneModel<T>) model).getDocument());
+			} finally {
+				instrumentation.stop(clazz, Operation.INSERT, start);
+			}
+		} else {
+			UpdateOneModel<T> update = (UpdateOneModel<T>) model;
+			UpdateResult res;
+			long start = instrumentation.start(clazz, Operation.UPDATE);
+			try {
+				res = coll.updateOne(update.getFilter(), update.getUpdate(), update.getOptions());
+			} finally {
+				instrumentation.stop(clazz, Operation.UPDATE, start);
+			}
+			if (res.getMatchedCount() == 0 && !update.getOptions().isUpsert()) {
+				// only partial updates are done without upsert, so the entity vanished in between
+				if (handler.isPartial()) {
+					// inserting would write the properties not loaded as null
+					LOG.warn("Partially loaded Entity with id {} of class {} vanished, not inserting it again",
+							handler.getId(), handler.properties.getEntityClass());
+				} else {
+					LOG.debug("Entity with id {} of class {} vanished, inserting it again", handler.getId(),
+							handler.properties.getEntityClass());
+					start = instrumentation.start(clazz, Operation.INSERT);
+					try {
+						coll.insertOne((T) handler.proxy);
+					} finally {
+						instrumentation.stop(clazz, Operation.INSERT, start);
+					}
+				}
+			}
+		}
+		handler.saved();
+		return true;
+	}
+
+	/**
+	 * validates all properties of the given EntityInvocationHandler represented Entity which need validation on save
+	 *
+	 * @param handler
+	 *            EntityInvocationHandler (Entity) to validate
+	 * @throws javax.validation.ConstraintViolationException
+	 *             if a property doesn't match its constraints
+	 */
+	static void validate(EntityInvocationHandler handler) {
+		if (handler.validationMode == ValidationMode.NONE) {
+			return;
+		}
+		Class<? extends Entity> clazz = handler.properties.getEntityClass();
+		long start = handler.instrumentation.start(clazz, Operation.VALIDATE);
+		try {
+			for (ParameterProperty cpp : handler.properties.getValidationProperties()) {
+				if ((handler.available != null && !handler.available.get(cpp.getOrdinal()))
+						|| !handler.isDecoded(cpp)) {
+					// properties not loaded or decoded are not written, so there's nothing to validate
+					continue;
+				}
+				cpp.validate(handler._value(cpp));
+			}
+		} finally {
+			handler.instrumentation.stop(clazz, Operation.VALIDATE, start);
+		}
+	}
+
+	/**
+	 * creates the write operation needed to save the given EntityInvocationHandler represented Entity. Entities without
+	 * id are inserted, persisted ones get only their modified properties updated and all others are upserted (or
+	 * inserted if the entity class doesn't allow upserts). The entity isn't marked as persisted, this has to happen
+	 * after the operation was executed.
+	 *
+	 * @param handler
+	 *            EntityInvocationHandler (Entity) to save
+	 * @param coll
+	 *            MongoCollection to save entity into
+	 * @param modified
+	 *            modified properties of the entity, must not be empty
+	 * @return operation saving the entity
 	 */
 	@SuppressWarnings("unchecked")
-	static <T extends Entity> void save(EntityInvocationHandler handler, MongoCollection<T> coll) {
-		for (ParameterProperty cpp : handler.properties.getValidationProperties()) {
-			cpp.validate(handler.data.get(cpp.getMongoName()));
+	static <T extends Entity> WriteModel<T> prepareSave(EntityInvocationHandler handler, MongoCollection<T> coll,
+			List<ParameterProperty> modified) {
+		Object id = handler.getId();
+		if (handler.persisted && id != null && !modified.contains(handler.properties.getIdProperty())) {
+			return new UpdateOneModel<>(idFilter(handler), update(handler, coll, modified));
 		}
-		BsonDocumentWrapper wrapper = new BsonDocumentWrapper<>(handler.proxy,
-				(org.bson.codecs.Encoder<Entity>) coll.getCodecRegistry().get(handler.properties.getEntityClass()));
-		UpdateResult res = coll.updateOne(
-				new BsonDocument("_id", BsonDocumentWrapper.asBsonDocument(EntityCodec._obtainId(handler.proxy),
-						idRegistry)), new BsonDocument("$set", wrapper), new UpdateOptions());
-		if (res.getMatchedCount() == 0) {
-			// TODO this seems too nasty, there must be a better way.for now live with it
-			coll.insertOne((T) handler.proxy);
+		checkState(!handler.isPartial(), "Entity %s with id %s is partially loaded, its id can't be changed",
+				handler.properties.getEntityClass(), id);
+		if (id == null || !handler.properties.isUpsert()) {
+			// without id the entity is known to be new, so there's nothing to update
+			return new InsertOneModel<>((T) handler.proxy);
+		} else {
+			// entity might exist already (or the id changed), so write the whole entity
+			BsonDocumentWrapper wrapper = new BsonDocumentWrapper<>(handler.proxy,
+					(org.bson.codecs.Encoder<Entity>) coll.getCodecRegistry().get(handler.properties.getEntityClass()));
+			return new UpdateOneModel<>(idFilter(handler), new BsonDocument("$set", wrapper),
+					new UpdateOptions().upsert(true));
 		}
-		handler.persist();
+	}
+
+	/**
+	 * creates the filter matching the document of the given EntityInvocationHandler represented Entity
+	 */
+	private static BsonDocument idFilter(EntityInvocationHandler handler) {
+		return new BsonDocument("_id", BsonDocumentWrapper.asBsonDocument(handler.getId(), idRegistry));
+	}
+
+	/**
+	 * creates the update for the given modified properties of an already persisted entity, properties set to null are
+	 * removed. Computed properties are rewritten as well, as they might depend on the modified ones.
+	 *
+	 * @param handler
+	 *            EntityInvocationHandler (Entity) to save
+	 * @param coll
+	 *            MongoCollection to save entity into
+	 * @param modified
+	 *            properties which need to be written
+	 * @return update document containing $set and $unset for the modified properties
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Entity> BsonDocument update(EntityInvocationHandler handler, MongoCollection<T> coll,
+			List<ParameterProperty> modified) {
+		List<ParameterProperty> written = Lists.newArrayList(modified);
+		if (!handler.isPartial()) {
+			// computed values of partially loaded entities might depend on properties not loaded
+			for (ParameterProperty pp : handler.properties.getProperties()) {
+				if (pp.isComputed() && !pp.isTransient()) {
+					written.add(pp);
+				}
+			}
+		}
+		List<ParameterProperty> set = Lists.newArrayList();
+		BsonDocument unset = new BsonDocument();
+		for (ParameterProperty pp : written) {
+			if (handler._get(pp) == null) {
+				unset.put(pp.getMongoName(), new BsonString(""));
+			} else {
+				set.add(pp);
+			}
+		}
+
+		BsonDocument update = new BsonDocument();
+		if (!set.isEmpty()) {
+			BsonDocument values = new BsonDocument();
+			BsonDocumentWriter writer = new BsonDocumentWriter(values);
+			writer.writeStartDocument();
+			((EntityCodec<Entity>) coll.getCodecRegistry().get(handler.properties.getEntityClass())).encodeProperties(
+					writer, handler.proxy, set);
+			writer.writeEndDocument();
+			update.put("$set", values);
+		}
+		if (!unset.isEmpty()) {
+			update.put("$unset", unset);
+		}
+		return update;
 	}
 
 	/**
@@ -430,7 +1225,13 @@ class EntityInvocationHandler implements InvocationHandler {
 	 *            MongoCollection in which this entity is saved
 	 */
 	static <T extends Entity> void drop(EntityInvocationHandler handler, MongoCollection<T> coll) {
-		coll.findOneAndDelete(new Document(ID, (handler.proxy).get(ID)));
+		Class<? extends Entity> clazz = handler.properties.getEntityClass();
+		long start = handler.instrumentation.start(clazz, Operation.DROP);
+		try {
+			coll.findOneAndDelete(new Document(ID, (handler.proxy).get(ID)));
+		} finally {
+			handler.instrumentation.stop(clazz, Operation.DROP, start);
+		}
 	}
 
 	/**
@@ -453,6 +1254,37 @@ class EntityInvocationHandler implements InvocationHandler {
 		}
 	}
 
+	/**
+	 * searches for all given ids within the MongoCollection. Ids are queried in chunks of at most
+	 * {@value #LOAD_BATCH_SIZE} with a single $in query each.
+	 *
+	 * @param collection
+	 *            where the entity class is stored in
+	 * @param ids
+	 *            of the entities to load
+	 * @param <T>
+	 *            Type of the entity
+	 * @return map containing for each given id, in the order of the given ids, the corresponding entity or null if no
+	 *         entity with this id exists in the given collection
+	 */
+	static <T extends Entity> Map<Object, T> findAll(MongoCollection<T> collection, Collection<?> ids) {
+		Map<Object, T> found = Maps.newLinkedHashMap();
+		for (Object id : ids) {
+			// put all ids upfront to keep the order of the ids, missing ones stay null
+			found.put(id, null);
+		}
+		for (List<Object> chunk : Lists.partition(Lists.newArrayList(found.keySet()), LOAD_BATCH_SIZE)) {
+			try (MongoCursor<T> curs = collection.find(new Document(Entity.ID, new Document("$in", chunk))).batchSize(
+					chunk.size()).iterator()) {
+				while (curs.hasNext()) {
+					T entity = curs.next();
+					found.put(entity.get(Entity.ID), entity);
+				}
+			}
+		}
+		return found;
+	}
+
 	/**
 	 * returns the {@link com.github.cherimojava.data.mongo.entity.EntityInvocationHandler} of the given entity
 	 * 
@@ -476,9 +1308,136 @@ class EntityInvocationHandler implements InvocationHandler {
 	}
 
 	/**
-	 * marks that the given entity is persisted
+	 * returns the EntityProperties of the entity class this handler backs
+	 *
+	 * @return EntityProperties of this handlers entity class
+	 */
+	EntityProperties getProperties() {
+		return properties;
+	}
+
+	/**
+	 * marks that the given entity is persisted, the entity has no modifications afterwards
 	 */
 	public void persist() {
 		persisted = true;
+		dirty.clear();
+	}
+
+	/**
+	 * marks that the given entity was just saved, so it's persisted and known to the identity map (if any) from now on.
+	 * Must only be called once MongoDB acknowledged the write, otherwise a retried save would miss the modifications
+	 */
+	void saved() {
+		written(Sets.<EntityInvocationHandler> newIdentityHashSet());
+		if (identityMap != null) {
+			identityMap.put(proxy);
+		}
+		if (cache != null) {
+			cache.invalidate(getId());
+		}
+	}
+
+	/**
+	 * marks that the given entity was just dropped. It's no longer persisted and all its available properties are
+	 * modified, so saving it again writes it as a new entity
+	 */
+	private void dropped() {
+		persisted = false;
+		for (ParameterProperty pp : properties.getProperties()) {
+			if (!pp.isTransient() && !pp.isComputed() && (available == null || available.get(pp.getOrdinal()))) {
+				dirty.set(pp.getOrdinal());
+			}
+		}
+		if (identityMap != null) {
+			identityMap.remove(proxy);
+		}
+		if (cache != null) {
+			cache.invalidate(getId());
+		}
+	}
+
+	/**
+	 * marks this entity and all entities embedded into it as persisted, as they were written along with this entity
+	 *
+	 * @param visited
+	 *            entities already marked, to stop on cyclic embeddings
+	 */
+	private void written(Set<EntityInvocationHandler> visited) {
+		if (!visited.add(this)) {
+			return;
+		}
+		persist();
+		for (ParameterProperty pp : properties.getProperties()) {
+			if (pp.isReference() || pp.isTransient() || pp.isComputed() || !isKnown(pp)) {
+				// referenced entities are saved on their own, properties not known weren't touched at all
+				continue;
+			}
+			Object value = data[pp.getOrdinal()];
+			if (value instanceof Entity) {
+				getHandler((Entity) value).written(visited);
+			} else if (value instanceof Collection) {
+				for (Object o : (Collection) value) {
+					if (!(o instanceof Entity)) {
+						// collections are homogeneous, so there are no entities in here
+						break;
+					}
+					getHandler((Entity) o).written(visited);
+				}
+			}
+		}
+	}
+
+	/**
+	 * returns if this entity is lazy and not yet loaded
+	 */
+	boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * sets the identity map in which this entity is tracked
+	 */
+	void setIdentityMap(IdentityMap identityMap) {
+		this.identityMap = identityMap;
+	}
+
+	/**
+	 * sets the cache through which this entity is loaded and which is invalidated once this entity changes
+	 */
+	void setCache(EntityCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * sets when this entity validates its properties, unless the entity class declares its own validation mode
+	 */
+	void setValidationMode(ValidationMode validationMode) {
+		if (properties.getValidationMode() == null) {
+			this.validationMode = validationMode;
+		}
+	}
+
+	/**
+	 * sets the instrumentation receiving timings of the operations executed by this entity
+	 */
+	void setInstrumentation(Instrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	/**
+	 * binds this entity to the entity it's embedded in, saving this entity saves the parent entity
+	 */
+	void setParent(EntityInvocationHandler parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * marks that the given entity was just loaded from MongoDB, so it's persisted and none of its values was handed out
+	 * yet
+	 */
+	void loaded() {
+		persist();
+		exposed.clear();
 	}
 }
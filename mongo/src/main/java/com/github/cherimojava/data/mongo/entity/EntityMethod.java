@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Resolved information about a method of an Entity class, telling the {@link EntityInvocationHandler} what to do once
+ * the method is invoked. Instances are created once per Entity class, so that invoking a method doesn't need to derive
+ * the property from the method name again
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+final class EntityMethod {
+	/**
+	 * actions for methods declared by Entity itself, looked up by their name
+	 */
+	private static final Map<String, Action> entityActions = ImmutableMap.<String, Action> builder().put("get",
+			Action.GET_PROPERTY).put("set", Action.SET_PROPERTY).put("save", Action.SAVE).put("drop", Action.DROP).put(
+			"equals", Action.EQUALS).put("seal", Action.SEAL).put("entityClass", Action.ENTITY_CLASS).put("toString",
+			Action.TO_STRING).put("hashCode", Action.HASH_CODE).put("load", Action.LOAD).build();
+
+	private final Action action;
+	private final ParameterProperty property;
+	private final boolean fluent;
+
+	private EntityMethod(Action action, ParameterProperty property, boolean fluent) {
+		this.action = action;
+		this.property = property;
+		this.fluent = fluent;
+	}
+
+	/**
+	 * returns what needs to be done if this method is invoked
+	 */
+	Action getAction() {
+		return action;
+	}
+
+	/**
+	 * returns the property this method is working on or null if this method isn't a getter, setter or adder
+	 */
+	ParameterProperty getProperty() {
+		return property;
+	}
+
+	/**
+	 * returns if this method returns the entity itself (fluent API) or not
+	 */
+	boolean isFluent() {
+		return fluent;
+	}
+
+	/**
+	 * resolves the given method into an EntityMethod
+	 *
+	 * @param m
+	 *            method to resolve
+	 * @param pojoNames
+	 *            properties of the Entity class linked by their pojo name
+	 * @return EntityMethod for the given method
+	 * @throws java.lang.IllegalArgumentException
+	 *             if the method can't be resolved
+	 */
+	static EntityMethod resolve(Method m, Map<String, ParameterProperty> pojoNames) {
+		Action action = entityActions.get(m.getName());
+		if (action != null) {
+			return new EntityMethod(action, null, false);
+		}
+		ParameterProperty pp = pojoNames.get(EntityUtils.getPojoNameFromMethod(m));
+		checkArgument(pp != null, "Method %s doesn't belong to any property", m.getName());
+		if (m.getName().startsWith("get")) {
+			return new EntityMethod(Action.GET, pp, false);
+		} else if (m.getName().startsWith("set")) {
+			return new EntityMethod(Action.SET, pp, Boolean.TRUE.equals(pp.isFluent(ParameterProperty.MethodType.SETTER)));
+		} else {
+			return new EntityMethod(Action.ADD, pp, Boolean.TRUE.equals(pp.isFluent(ParameterProperty.MethodType.ADDER)));
+		}
+	}
+
+	/**
+	 * Actions an EntityInvocationHandler performs for invoked methods
+	 */
+	static enum Action {
+		GET, // getter of a property
+		SET, // setter of a property
+		ADD, // adder of a collection property
+		GET_PROPERTY, // Entity.get(String)
+		SET_PROPERTY, // Entity.set(String,Object)
+		SAVE,
+		DROP,
+		EQUALS,
+		SEAL,
+		ENTITY_CLASS,
+		TO_STRING,
+		HASH_CODE,
+		LOAD
+	}
+}
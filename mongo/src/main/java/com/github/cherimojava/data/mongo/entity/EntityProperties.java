@@ -18,7 +18,12 @@ package com.github.cherimojava.data.mongo.entity;
 import static com.github.cherimojava.data.mongo.entity.EntityUtils.getMongoNameFromMethod;
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,9 +32,11 @@ import javax.validation.Validator;
 
 import org.bson.types.ObjectId;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -49,6 +56,21 @@ public final class EntityProperties {
 	 */
 	private final String collectionName;
 
+	/**
+	 * whether entities not known to be persisted are saved through upsert or insert
+	 */
+	private final boolean upsert;
+
+	/**
+	 * whether loaded entities decode their properties only once they're accessed
+	 */
+	private final boolean lazyDecoding;
+
+	/**
+	 * validation mode declared by the entity class, null if the entity class doesn't declare one
+	 */
+	private final ValidationMode validationMode;
+
 	/**
 	 * Stores ParameterProperties linked by their pojo name
 	 */
@@ -58,6 +80,22 @@ public final class EntityProperties {
 	 */
 	private final Map<String, ParameterProperty> mongoNames;
 
+	/**
+	 * all properties of this entity class, ordered by their ordinal
+	 */
+	private final List<ParameterProperty> properties;
+
+	/**
+	 * true if at least one property of this entity class stores its value unboxed
+	 */
+	private final boolean primitiveProperties;
+
+	/**
+	 * Stores for each method of the entity class what to do once it's invoked. Proxies hand over their own Method
+	 * instances, so lookup happens through Method equality, which neither allocates nor derives names
+	 */
+	private final Map<Method, EntityMethod> methods;
+
 	/**
 	 * list of properties containing validation annotation
 	 */
@@ -70,18 +108,30 @@ public final class EntityProperties {
 
 	private final ParameterProperty id;
 
+	/**
+	 * constructor of the JDK proxy class implementing this entity class. Resolved once, so that creating a new instance
+	 * doesn't need to look up the proxy class and its constructor again
+	 */
+	private final Constructor<? extends Entity> constructor;
+
 	private EntityProperties(Builder builder) {
 		this.clazz = builder.clazz;
 		this.collectionName = builder.collectionName;
+		this.upsert = builder.upsert;
+		this.lazyDecoding = builder.lazyDecoding;
+		this.validationMode = builder.validationMode;
 		boolean explicitId = false;
 
 		ImmutableMap.Builder<String, ParameterProperty> pojo = new ImmutableMap.Builder<>();
 		ImmutableMap.Builder<String, ParameterProperty> mongo = new ImmutableMap.Builder<>();
 		ImmutableList.Builder<ParameterProperty> valProps = new ImmutableList.Builder<>();
+		ImmutableList.Builder<ParameterProperty> props = new ImmutableList.Builder<>();
 
 		ParameterProperty idP = null;
+		int ordinal = 0;
 		for (Method m : builder.properties) {
-			ParameterProperty pp = ParameterProperty.Builder.buildFrom(m, builder.validator);
+			ParameterProperty pp = ParameterProperty.Builder.from(m, builder.validator).setOrdinal(ordinal++).build();
+			props.add(pp);
 			pojo.put(pp.getPojoName(), pp);
 			mongo.put(pp.getMongoName(), pp);
 			if (Entity.ID.equals(pp.getMongoName())) {
@@ -97,16 +147,101 @@ public final class EntityProperties {
 		// TODO add to the validator or so, the capability to validate implicit id too
 		if (!explicitId) {
 			idP = new ParameterProperty.Builder().setMongoName(Entity.ID).setPojoName(Entity.ID).setType(ObjectId.class).setTransient(
-					false).hasConstraints(false).setValidator(builder.validator).build();
+					false).hasConstraints(false).setValidator(builder.validator).setOrdinal(ordinal).build();
+			props.add(idP);
 			pojo.put(Entity.ID, idP);
 			mongo.put(Entity.ID, idP);
 		}
 
 		this.pojoNames = pojo.build();
 		this.mongoNames = mongo.build();
+		this.properties = props.build();
+		boolean primitives = false;
+		for (ParameterProperty pp : properties) {
+			primitives |= pp.isPrimitive();
+		}
+		this.primitiveProperties = primitives;
+		this.methods = resolveMethods(clazz, pojoNames);
 		this.validationProperties = valProps.build();
 		this.explicitId = explicitId;
 		id = idP;
+		constructor = getConstructor(clazz);
+	}
+
+	/**
+	 * resolves for all methods of the given entity class what needs to be done once they're invoked
+	 *
+	 * @param clazz
+	 *            entity class to resolve methods for
+	 * @param pojoNames
+	 *            properties of the entity class linked by their pojo name
+	 * @return EntityMethods linked by the method they belong to
+	 */
+	private static Map<Method, EntityMethod> resolveMethods(Class<? extends Entity> clazz,
+			Map<String, ParameterProperty> pojoNames) {
+		Map<Method, EntityMethod> resolved = Maps.newHashMap();
+		for (Method m : clazz.getMethods()) {
+			resolved.put(m, EntityMethod.resolve(m, pojoNames));
+		}
+		// generated classes dispatch equals, hashCode and toString with the methods declared by Object
+		for (Method m : Object.class.getMethods()) {
+			if (Modifier.isPublic(m.getModifiers()) && !Modifier.isFinal(m.getModifiers())) {
+				resolved.put(m, EntityMethod.resolve(m, pojoNames));
+			}
+		}
+		return ImmutableMap.copyOf(resolved);
+	}
+
+	/**
+	 * handler of the throwaway proxy instance created to get hold of the proxy class of an entity class
+	 */
+	private static final InvocationHandler UNUSED = new InvocationHandler() {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			throw new UnsupportedOperationException("Proxy is only created to look up its class");
+		}
+	};
+
+	/**
+	 * looks up the JDK proxy class implementing the given entity class and returns its constructor. The proxy class is
+	 * taken from a throwaway proxy instance, as looking it up directly is deprecated with newer JDKs
+	 *
+	 * @param clazz
+	 *            entity class to get the proxy class for
+	 * @return constructor of the proxy class, taking the InvocationHandler backing the instance
+	 */
+	@SuppressWarnings("unchecked")
+	private static Constructor<? extends Entity> getConstructor(Class<? extends Entity> clazz) {
+		Class<?> generated = Proxy.newProxyInstance(EntityInvocationHandler.class.getClassLoader(),
+				new Class<?>[] { clazz }, UNUSED).getClass();
+		try {
+			Constructor<? extends Entity> constructor = (Constructor<? extends Entity>) generated.getConstructor(
+					InvocationHandler.class);
+			if (!Modifier.isPublic(generated.getModifiers())) {
+				// non public entity classes result in a non public generated class
+				constructor.setAccessible(true);
+			}
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(String.format("Proxy class for %s has no handler constructor", clazz), e);
+		}
+	}
+
+	/**
+	 * creates a new instance of the entity class, backed by the given handler
+	 *
+	 * @param handler
+	 *            handler providing the functionality of the new instance
+	 * @return new instance of the entity class
+	 */
+	Entity newInstance(InvocationHandler handler) {
+		try {
+			return constructor.newInstance(handler);
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalStateException("The impossible happened. Could not instantiate Class", e);
+		} catch (InvocationTargetException e) {
+			throw Throwables.propagate(e.getCause());
+		}
 	}
 
 	/**
@@ -117,9 +252,25 @@ public final class EntityProperties {
 	 * @return ParameterProperty if found or null otherwise
 	 */
 	public ParameterProperty getProperty(Method m) {
+		EntityMethod em = methods.get(m);
+		if (em != null) {
+			return em.getProperty();
+		}
 		return pojoNames.get(EntityUtils.getPojoNameFromMethod(m));
 	}
 
+	/**
+	 * retrieves what needs to be done if the given method is invoked or null if the method doesn't belong to this
+	 * entity class
+	 *
+	 * @param m
+	 *            method to retrieve EntityMethod for
+	 * @return EntityMethod if found or null otherwise
+	 */
+	EntityMethod getMethod(Method m) {
+		return methods.get(m);
+	}
+
 	/**
 	 * retrieves the corresponding ParameterProperty from the given MongoName or null if no such property exists
 	 *
@@ -138,6 +289,25 @@ public final class EntityProperties {
 		return clazz;
 	}
 
+	/**
+	 * returns all properties of this entity class, including the implicit id property if no explicit one is declared.
+	 * The position of a property within the list matches its ordinal
+	 *
+	 * @return properties of this entity class ordered by their ordinal
+	 */
+	public List<ParameterProperty> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * returns if any property of this entity class stores its value unboxed
+	 *
+	 * @return true if at least one property is primitive, false otherwise
+	 */
+	public boolean hasPrimitiveProperties() {
+		return primitiveProperties;
+	}
+
 	public List<ParameterProperty> getValidationProperties() {
 		return validationProperties;
 	}
@@ -151,6 +321,30 @@ public final class EntityProperties {
 		return collectionName;
 	}
 
+	/**
+	 * returns if entities having an id, but not being known to be persisted, are saved through a single upsert
+	 * (default) or are inserted. See {@link com.github.cherimojava.data.mongo.entity.annotation.Collection#upsert()}
+	 */
+	public boolean isUpsert() {
+		return upsert;
+	}
+
+	/**
+	 * returns if loaded entities decode their properties only once they're accessed. See
+	 * {@link com.github.cherimojava.data.mongo.entity.annotation.Collection#lazyDecoding()}
+	 */
+	public boolean isLazyDecoding() {
+		return lazyDecoding;
+	}
+
+	/**
+	 * returns the validation mode declared by the entity class through
+	 * {@link com.github.cherimojava.data.mongo.entity.annotation.Validate}, null if the entity class declares none
+	 */
+	public ValidationMode getValidationMode() {
+		return validationMode;
+	}
+
 	/**
 	 * returns if for this entity an explicit id was defined or not return true if an explicit Id was defined, either
 	 * through @Id or @Named("_id")
@@ -168,6 +362,12 @@ public final class EntityProperties {
 
 		private String collectionName;
 
+		private boolean upsert = true;
+
+		private boolean lazyDecoding = false;
+
+		private ValidationMode validationMode;
+
 		/**
 		 * List of Properties to add later
 		 */
@@ -186,6 +386,21 @@ public final class EntityProperties {
 			return this;
 		}
 
+		Builder setUpsert(boolean upsert) {
+			this.upsert = upsert;
+			return this;
+		}
+
+		Builder setLazyDecoding(boolean lazyDecoding) {
+			this.lazyDecoding = lazyDecoding;
+			return this;
+		}
+
+		Builder setValidationMode(ValidationMode validationMode) {
+			this.validationMode = validationMode;
+			return this;
+		}
+
 		Builder setEntityClass(Class<? extends Entity> clazz) {
 			this.clazz = clazz;
 			return this;
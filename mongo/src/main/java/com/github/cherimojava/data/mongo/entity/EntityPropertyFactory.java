@@ -35,6 +35,7 @@ import javax.validation.Validator;
 
 import com.github.cherimojava.data.mongo.entity.annotation.Computed;
 import com.github.cherimojava.data.mongo.entity.annotation.Reference;
+import com.github.cherimojava.data.mongo.entity.annotation.Validate;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -99,6 +100,16 @@ class EntityPropertyFactory {
 		EntityProperties.Builder builder = new EntityProperties.Builder().setEntityClass(clazz).setValidator(validator);
 
 		builder.setCollectionName(getCollectionName(clazz));
+		com.github.cherimojava.data.mongo.entity.annotation.Collection collection = clazz.getAnnotation(
+				com.github.cherimojava.data.mongo.entity.annotation.Collection.class);
+		if (collection != null) {
+			builder.setUpsert(collection.upsert());
+			builder.setLazyDecoding(collection.lazyDecoding());
+		}
+		Validate validate = clazz.getAnnotation(Validate.class);
+		if (validate != null) {
+			builder.setValidationMode(validate.value());
+		}
 
 		// iterate through all methods and create parameter properties for them
 		for (Method m : clazz.getMethods()) {
@@ -29,6 +29,7 @@ import java.util.Locale;
 import javax.inject.Named;
 
 import org.apache.commons.lang3.StringUtils;
+import org.bson.RawBsonDocument;
 
 import com.github.cherimojava.data.mongo.entity.annotation.Id;
 
@@ -225,6 +226,30 @@ public class EntityUtils {
 		EntityInvocationHandler.getHandler(e).persist();
 	}
 
+	/**
+	 * returns the raw document the given entity was loaded from, if its entity class is decoded lazily
+	 *
+	 * @param e
+	 *            entity to get the raw document from
+	 * @return raw document or null if the entity isn't decoded lazily
+	 */
+	public static RawBsonDocument getRawDocument(Entity e) {
+		return EntityInvocationHandler.getHandler(e).getRaw();
+	}
+
+	/**
+	 * returns if the given property of the given entity is decoded already
+	 *
+	 * @param e
+	 *            entity to check
+	 * @param pp
+	 *            property to check
+	 * @return true if the property is decoded or the entity isn't decoded lazily, false otherwise
+	 */
+	public static boolean isDecoded(Entity e, ParameterProperty pp) {
+		return EntityInvocationHandler.getHandler(e).isDecoded(pp);
+	}
+
 	/**
 	 * returns if the given Entity is already persisted or not
 	 * 
@@ -235,6 +260,33 @@ public class EntityUtils {
 		return EntityInvocationHandler.getHandler(e).persisted;
 	}
 
+	/**
+	 * returns if the given primitive property of the entity currently holds a value
+	 *
+	 * @param e
+	 *            entity to check
+	 * @param pp
+	 *            primitive property of the entity
+	 * @return true if the property is set, false otherwise
+	 */
+	public static boolean hasPrimitive(Entity e, ParameterProperty pp) {
+		return EntityInvocationHandler.getHandler(e).hasPrimitive(pp);
+	}
+
+	/**
+	 * returns the raw bits of the given primitive property of the entity, without boxing it. int, long and boolean
+	 * (1/0) values are returned as long, double values as {@link Double#doubleToRawLongBits(double)}
+	 *
+	 * @param e
+	 *            entity to read from
+	 * @param pp
+	 *            primitive property of the entity
+	 * @return raw bits of the property value
+	 */
+	public static long getPrimitive(Entity e, ParameterProperty pp) {
+		return EntityInvocationHandler.getHandler(e).getPrimitive(pp);
+	}
+
     /**
      * returns true if this getter methods return type is either an entity or a list of entities. Otherwise false
      * @param getter
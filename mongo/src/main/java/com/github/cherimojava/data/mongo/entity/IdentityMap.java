@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps track of the entities materialized through an {@link EntityFactory}, so that a given entity class and id
+ * always map to the same entity instance. Entities are only weakly referenced, they're dropped from the map once no
+ * longer used elsewhere. Entities are registered once they're loaded, lazily referenced or saved and removed once
+ * they're dropped.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class IdentityMap {
+
+	private final Cache<Key, Entity> entities = CacheBuilder.newBuilder().weakValues().build();
+
+	IdentityMap() {
+	}
+
+	/**
+	 * returns the entity instance registered for the given entity class and id, which might be still lazy
+	 *
+	 * @param clazz
+	 *            entity class to look up
+	 * @param id
+	 *            id of the entity to look up
+	 * @return registered entity or null if none is registered
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> T get(Class<T> clazz, Object id) {
+		return (T) entities.getIfPresent(new Key(clazz, id));
+	}
+
+	/**
+	 * returns the entity instance registered for the given entity class and id, if it's already loaded
+	 *
+	 * @param clazz
+	 *            entity class to look up
+	 * @param id
+	 *            id of the entity to look up
+	 * @return registered entity or null if none is registered or the registered entity is still lazy
+	 */
+	public <T extends Entity> T getLoaded(Class<T> clazz, Object id) {
+		T e = get(clazz, id);
+		if (e != null && EntityInvocationHandler.getHandler(e).isLazy()) {
+			return null;
+		}
+		return e;
+	}
+
+	/**
+	 * merges the just loaded entity into this map. If there's no entity registered with the same entity class and id
+	 * the given entity gets registered and returned. If the registered entity is still lazy it gets filled with the data
+	 * of the given entity, otherwise the registered entity is kept as is, as it might contain modifications not yet
+	 * saved. Entities loaded through a projection only add the properties the registered entity is missing, which
+	 * stays partially loaded
+	 *
+	 * @param loaded
+	 *            entity which was just loaded
+	 * @return entity instance registered for the entity class and id of the given entity
+	 */
+	public <T extends Entity> T merge(T loaded) {
+		T registered = putIfAbsent(loaded);
+		if (registered != loaded) {
+			EntityInvocationHandler.getHandler(registered).resolve(EntityInvocationHandler.getHandler(loaded));
+		}
+		return registered;
+	}
+
+	/**
+	 * registers the given entity, replacing an entity registered with the same entity class and id
+	 */
+	void put(Entity e) {
+		EntityInvocationHandler handler = EntityInvocationHandler.getHandler(e);
+		if (handler.getId() != null) {
+			entities.put(key(handler), e);
+		}
+	}
+
+	/**
+	 * registers the given entity, if there's no entity registered with the same entity class and id yet
+	 *
+	 * @return the entity registered for the entity class and id of the given entity
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends Entity> T putIfAbsent(T e) {
+		EntityInvocationHandler handler = EntityInvocationHandler.getHandler(e);
+		if (handler.getId() == null) {
+			return e;
+		}
+		T registered = (T) entities.asMap().putIfAbsent(key(handler), e);
+		return registered != null ? registered : e;
+	}
+
+	/**
+	 * removes the given entity from this map, if it's the one registered for its entity class and id
+	 */
+	void remove(Entity e) {
+		EntityInvocationHandler handler = EntityInvocationHandler.getHandler(e);
+		if (handler.getId() != null) {
+			entities.asMap().remove(key(handler), e);
+		}
+	}
+
+	private static Key key(EntityInvocationHandler handler) {
+		return new Key(handler.getProperties().getEntityClass(), handler.getId());
+	}
+
+	/**
+	 * removes all registered entities
+	 */
+	public void clear() {
+		entities.invalidateAll();
+	}
+
+	/**
+	 * returns the (approximate) number of registered entities
+	 */
+	public long size() {
+		return entities.size();
+	}
+
+	/**
+	 * identifies an entity through its entity class and id
+	 */
+	private static final class Key {
+		private final Class<? extends Entity> clazz;
+		private final Object id;
+
+		private Key(Class<? extends Entity> clazz, Object id) {
+			this.clazz = clazz;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return clazz == other.clazz && id.equals(other.id);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(clazz, id);
+		}
+	}
+}
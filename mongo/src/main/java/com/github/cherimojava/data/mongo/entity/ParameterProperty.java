@@ -36,6 +36,7 @@ import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.Validator;
 import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
 
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -48,7 +49,9 @@ import com.github.cherimojava.data.mongo.entity.annotation.Computed;
 import com.github.cherimojava.data.mongo.entity.annotation.Final;
 import com.github.cherimojava.data.mongo.entity.annotation.Reference;
 import com.github.cherimojava.data.mongo.entity.annotation.Transient;
+import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.primitives.Primitives;
@@ -74,6 +77,20 @@ public final class ParameterProperty {
 	private final ReferenceType referenceType;
 	private final Map<MethodType, Boolean> typeReturnMap;
 	private final boolean finl;
+	private final int ordinal;
+	private final Class<?> primitiveType;
+	private final boolean mutable;
+
+	/**
+	 * constraints of this property compiled into direct checks, null if they can only be checked through the validator
+	 */
+	private final Predicate<Object> constraintCheck;
+
+	/**
+	 * primitive types which are stored unboxed within the entity, as they're directly supported by bson
+	 */
+	private static final Set<Class<?>> storedPrimitives = ImmutableSet.<Class<?>> of(int.class, long.class,
+			double.class, boolean.class);
 
 	ParameterProperty(Builder builder) {
 		checkNotNull(builder.type, "type cannot be null");
@@ -94,6 +111,22 @@ public final class ParameterProperty {
 		computer = builder.computer;
 		referenceLoadingTime = builder.referenceLoadingTime;
 		referenceType = builder.referenceType;
+		ordinal = builder.ordinal;
+		primitiveType = builder.primitiveType;
+		constraintCheck = builder.constraintCheck;
+		checkArgument(primitiveType == null || storedPrimitives.contains(primitiveType),
+				"%s can't be stored as primitive", primitiveType);
+		// single references are only stored by id, so changes to the referenced entity don't change this one
+		mutable = !(ClassUtils.isPrimitiveOrWrapper(type) || String.class.equals(type) || ObjectId.class.equals(type)
+				|| DateTime.class.equals(type) || type.isEnum() || (isReference() && !isCollection()));
+	}
+
+	/**
+	 * gets the position of this property within the properties of its entity class. Entities store the value of this
+	 * property at this position
+	 */
+	public int getOrdinal() {
+		return ordinal;
 	}
 
 	/**
@@ -121,6 +154,29 @@ public final class ParameterProperty {
 		return typeReturnMap.get(type);
 	}
 
+	/**
+	 * returns if the value of this property is stored unboxed within the entity. This is the case for getters
+	 * returning int, long, double or boolean, which are neither transient nor computed
+	 */
+	public boolean isPrimitive() {
+		return primitiveType != null;
+	}
+
+	/**
+	 * returns the primitive type (int.class, long.class, etc.) of this property if it's stored unboxed, null otherwise
+	 */
+	public Class<?> getPrimitiveType() {
+		return primitiveType;
+	}
+
+	/**
+	 * returns if values of this property can be modified without going through the entity, like collections, arrays,
+	 * Dates or embedded entities. Such values might have changed once they've been handed out by the entity
+	 */
+	public boolean isMutable() {
+		return mutable;
+	}
+
 	/**
 	 * returns the type of the property this instance represents
 	 */
@@ -228,13 +284,9 @@ public final class ParameterProperty {
 	 *            property value to check for validity
 	 */
 	public void validate(Object value) {
-		if (value != null) {
-			if (!type.isAssignableFrom(value.getClass())) {
-				throw new ClassCastException(format("Can't cast from '%s' to '%s'",
-						value.getClass().getCanonicalName(), type.getCanonicalName()));
-			}
-		}
-		if (hasConstraints()) {
+		checkType(value);
+		if (hasConstraints() && (constraintCheck == null || !constraintCheck.apply(value))) {
+			// values passing the compiled constraints are valid, all others are checked through the validator
 			Set<? extends ConstraintViolation<? extends Entity>> violations = validator.validateValue(declaringClass,
 					pojoName, value, Entity.Special.class);
 			if (!violations.isEmpty()) {
@@ -248,6 +300,21 @@ public final class ParameterProperty {
 		}
 	}
 
+	/**
+	 * checks that the given value is of the type of this property. Throws ClassCastException if the value doesn't match
+	 *
+	 * @param value
+	 *            property value to check
+	 */
+	void checkType(Object value) {
+		if (value != null) {
+			if (!type.isAssignableFrom(value.getClass())) {
+				throw new ClassCastException(format("Can't cast from '%s' to '%s'",
+						value.getClass().getCanonicalName(), type.getCanonicalName()));
+			}
+		}
+	}
+
 	/**
 	 * Builder to create a new {@link ParameterProperty}
 	 *
@@ -269,6 +336,9 @@ public final class ParameterProperty {
 		private ReferenceLoadingTime referenceLoadingTime;
 		private ReferenceType referenceType = ReferenceType.NONE;
 		private Map<MethodType, Boolean> typeReturnMap = Maps.newHashMap();
+		private int ordinal;
+		private Class<?> primitiveType;
+		private Predicate<Object> constraintCheck;
 
 		Builder setTransient(boolean tranzient) {
 			this.tranzient = tranzient;
@@ -335,6 +405,21 @@ public final class ParameterProperty {
 			return this;
 		}
 
+		Builder setOrdinal(int ordinal) {
+			this.ordinal = ordinal;
+			return this;
+		}
+
+		Builder setPrimitiveType(Class<?> primitiveType) {
+			this.primitiveType = primitiveType;
+			return this;
+		}
+
+		Builder setConstraintCheck(Predicate<Object> constraintCheck) {
+			this.constraintCheck = constraintCheck;
+			return this;
+		}
+
 		ParameterProperty build() {
 			return new ParameterProperty(this);
 		}
@@ -346,8 +431,19 @@ public final class ParameterProperty {
 		 *            to create ParameterProperty from
 		 * @return ParameterProperty containing the information from the given method
 		 */
-		@SuppressWarnings("unchecked")
 		static ParameterProperty buildFrom(Method m, Validator validator) {
+			return from(m, validator).build();
+		}
+
+		/**
+		 * creates a new {@link Builder} prefilled with the attributes from the given get Method
+		 *
+		 * @param m
+		 *            to create ParameterProperty from
+		 * @return Builder containing the information from the given method
+		 */
+		@SuppressWarnings("unchecked")
+		static Builder from(Method m, Validator validator) {
 			Class<? extends Entity> declaringClass = (Class<? extends Entity>) m.getDeclaringClass();
 			BeanDescriptor bdesc = validator.getConstraintsForClass(declaringClass);
 			Computer computer = null;
@@ -398,6 +494,13 @@ public final class ParameterProperty {
 					bdesc.getConstraintsForProperty(EntityUtils.getPojoNameFromMethod(m)) != null).setValidator(
 					validator).setDeclaringClass(declaringClass).setTransient(m.isAnnotationPresent(Transient.class)).setComputer(
 					computer).setFinal(finl);
+			PropertyDescriptor constraints = bdesc.getConstraintsForProperty(EntityUtils.getPojoNameFromMethod(m));
+			if (constraints != null) {
+				builder.setConstraintCheck(CompiledConstraints.compile(constraints, builder.type));
+			}
+			if (storedPrimitives.contains(returnType) && computer == null && !m.isAnnotationPresent(Transient.class)) {
+				builder.setPrimitiveType(returnType);
+			}
 			if (Collection.class.isAssignableFrom(m.getReturnType())) {
 				checkArgument(m.getGenericReturnType().getClass() != Class.class, "Collections need to be generic");
 				Type type = ((ParameterizedType) m.getGenericReturnType()).getActualTypeArguments()[0];
@@ -418,7 +521,7 @@ public final class ParameterProperty {
 			} else {
 				builder.setReferenceType(ReferenceType.NONE);
 			}
-			return builder.build();
+			return builder;
 		}
 	}
 
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.BitSet;
+
+import org.bson.Document;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Subset of properties to load for an entity, see {@link Query#project(Projection)} and
+ * {@link EntityFactory#load(Class, Object, Projection)}. Entities loaded through a projection are partially loaded, the
+ * id is always loaded. Accessing a property which wasn't loaded loads the remaining properties, unless the projection
+ * is strict, in which case accessing such a property fails with an IllegalStateException. Saving a partially loaded
+ * entity writes only the properties which were modified, properties not loaded are never written (this includes
+ * computed properties, as their value can't be computed reliably). Comparing, hashing and printing a partially loaded
+ * entity uses only its loaded properties.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class Projection {
+
+	private final ImmutableSet<String> properties;
+
+	private final boolean strict;
+
+	private Projection(ImmutableSet<String> properties, boolean strict) {
+		this.properties = properties;
+		this.strict = strict;
+	}
+
+	/**
+	 * creates a projection including the given properties, referenced by their mongo name
+	 *
+	 * @param properties
+	 *            properties to load
+	 * @return projection including the given properties
+	 */
+	public static Projection of(String... properties) {
+		checkArgument(properties.length > 0, "Projection needs at least one property");
+		return new Projection(ImmutableSet.copyOf(properties), false);
+	}
+
+	/**
+	 * returns a strict version of this projection, entities loaded through it fail if a property not loaded is accessed
+	 * instead of loading the remaining properties
+	 */
+	public Projection strict() {
+		return new Projection(properties, true);
+	}
+
+	/**
+	 * returns if entities loaded through this projection fail if a property not loaded is accessed
+	 */
+	public boolean isStrict() {
+		return strict;
+	}
+
+	/**
+	 * returns the mongo names of the properties this projection includes
+	 */
+	public ImmutableSet<String> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * creates the MongoDB projection document for the given entity class, verifying that all properties exist
+	 */
+	Document toDocument(EntityProperties entityProperties) {
+		Document projection = new Document();
+		for (String property : properties) {
+			projection.put(checkProperty(entityProperties, property).getMongoName(), 1);
+		}
+		return projection;
+	}
+
+	/**
+	 * returns the ordinals of the properties of the given entity class this projection includes, including the id
+	 */
+	BitSet toOrdinals(EntityProperties entityProperties) {
+		BitSet ordinals = new BitSet(entityProperties.getProperties().size());
+		for (String property : properties) {
+			ordinals.set(checkProperty(entityProperties, property).getOrdinal());
+		}
+		ordinals.set(entityProperties.getIdProperty().getOrdinal());
+		return ordinals;
+	}
+
+	private static ParameterProperty checkProperty(EntityProperties entityProperties, String property) {
+		ParameterProperty pp = entityProperties.getProperty(property);
+		checkArgument(pp != null, "Unknown property %s, not declared for Entity %s", property,
+				entityProperties.getEntityClass());
+		checkArgument(!pp.isTransient(), "Property %s of Entity %s is transient and can't be loaded", property,
+				entityProperties.getEntityClass());
+		return pp;
+	}
+}
@@ -0,0 +1,308 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+
+import com.github.cherimojava.data.mongo.io.EntityCodec;
+import com.google.common.collect.Lists;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Query for entities of a given Entity class, created through {@link EntityFactory#query(Class)}. Properties are
+ * referenced through their mongo name and are validated against the properties of the Entity class. Results are
+ * returned through a cursor, which decodes entities batch wise as they're consumed, so that arbitrary large results
+ * can be processed with constant memory. Cursors must be closed once they're no longer needed.
+ *
+ * <pre>
+ * try (EntityCursor&lt;Person&gt; persons = factory.query(Person.class).eq(&quot;city&quot;, &quot;Berlin&quot;).ascending(&quot;name&quot;).limit(100).iterator()) {
+ * 	while (persons.hasNext()) {
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ *
+ * @param <T>
+ *            Entity type queried
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class Query<T extends Entity> {
+
+	/**
+	 * number of entities decoded at once if no batch size is given
+	 */
+	static final int DEFAULT_BATCH_SIZE = 100;
+
+	private final EntityFactory factory;
+	private final EntityProperties properties;
+	private final MongoCollection<T> collection;
+
+	private final List<Document> conditions = Lists.newArrayList();
+	private final Document sort = new Document();
+	private int limit = 0;
+	private int skip = 0;
+	private int batchSize = 0;
+	private Projection projection;
+
+	Query(EntityFactory factory, Class<T> clazz, MongoCollection<T> collection) {
+		this.factory = factory;
+		this.properties = EntityFactory.getProperties(clazz);
+		this.collection = collection;
+	}
+
+	/**
+	 * restricts the result to entities whose given property equals the given value
+	 */
+	public Query<T> eq(String property, Object value) {
+		ParameterProperty pp = checkProperty(property);
+		conditions.add(new Document(pp.getMongoName(), toMongo(pp, value)));
+		return this;
+	}
+
+	/**
+	 * restricts the result to entities whose given property doesn't equal the given value
+	 */
+	public Query<T> ne(String property, Object value) {
+		return condition(property, "$ne", value);
+	}
+
+	/**
+	 * restricts the result to entities whose given property is greater than the given value
+	 */
+	public Query<T> gt(String property, Object value) {
+		return condition(property, "$gt", value);
+	}
+
+	/**
+	 * restricts the result to entities whose given property is greater than or equal to the given value
+	 */
+	public Query<T> gte(String property, Object value) {
+		return condition(property, "$gte", value);
+	}
+
+	/**
+	 * restricts the result to entities whose given property is less than the given value
+	 */
+	public Query<T> lt(String property, Object value) {
+		return condition(property, "$lt", value);
+	}
+
+	/**
+	 * restricts the result to entities whose given property is less than or equal to the given value
+	 */
+	public Query<T> lte(String property, Object value) {
+		return condition(property, "$lte", value);
+	}
+
+	/**
+	 * restricts the result to entities whose given property equals any of the given values
+	 */
+	public Query<T> in(String property, Iterable<?> values) {
+		ParameterProperty pp = checkProperty(property);
+		List<Object> converted = Lists.newArrayList();
+		for (Object value : values) {
+			converted.add(toMongo(pp, value));
+		}
+		conditions.add(new Document(pp.getMongoName(), new Document("$in", converted)));
+		return this;
+	}
+
+	/**
+	 * sorts the result ascending by the given property. Multiple sort properties are applied in the order given
+	 */
+	public Query<T> ascending(String property) {
+		sort.put(checkProperty(property).getMongoName(), 1);
+		return this;
+	}
+
+	/**
+	 * sorts the result descending by the given property. Multiple sort properties are applied in the order given
+	 */
+	public Query<T> descending(String property) {
+		sort.put(checkProperty(property).getMongoName(), -1);
+		return this;
+	}
+
+	/**
+	 * limits the result to the given number of entities, 0 means no limit
+	 */
+	public Query<T> limit(int limit) {
+		checkArgument(limit >= 0, "Limit must not be negative, but was %s", limit);
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * skips the given number of entities from the start of the result
+	 */
+	public Query<T> skip(int skip) {
+		checkArgument(skip >= 0, "Skip must not be negative, but was %s", skip);
+		this.skip = skip;
+		return this;
+	}
+
+	/**
+	 * number of entities fetched from MongoDB and decoded at once. Eager references of all entities of a batch are
+	 * resolved together
+	 */
+	public Query<T> batchSize(int batchSize) {
+		checkArgument(batchSize > 0, "Batch size must be positive, but was %s", batchSize);
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * loads only the properties of the given projection, resulting in partially loaded entities
+	 */
+	public Query<T> project(Projection projection) {
+		projection.toDocument(properties);// validate early
+		this.projection = projection;
+		return this;
+	}
+
+	/**
+	 * executes the query and returns a cursor over the matching entities, which must be closed once done
+	 *
+	 * @return cursor over all matching entities
+	 */
+	public EntityCursor<T> iterator() {
+		return iterator(limit);
+	}
+
+	/**
+	 * executes the query limited to the given number of entities, without changing the limit of this query
+	 */
+	private EntityCursor<T> iterator(int limit) {
+		FindIterable<T> find;
+		if (projection != null) {
+			// decode through a codec which knows that the documents are only partially loaded
+			EntityCodec<T> codec = new EntityCodec<>(factory, properties, projection);
+			find = collection.withCodecRegistry(
+					CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(codec), collection.getCodecRegistry())).find(
+					getFilter()).projection(projection.toDocument(properties));
+		} else {
+			find = collection.find(getFilter());
+		}
+		find.sort(sort).skip(skip).limit(limit);
+		if (batchSize > 0) {
+			find.batchSize(batchSize);
+		}
+		// the driver decodes the first batch right away, so its references need to be resolved together as well
+		try (ReferenceResolver resolver = ReferenceResolver.open(factory)) {
+			EntityCursor<T> cursor = new EntityCursor<>(factory, find.iterator(), batchSize > 0 ? batchSize
+					: DEFAULT_BATCH_SIZE);
+			resolver.complete();
+			return cursor;
+		}
+	}
+
+	/**
+	 * executes the query and returns a sequential stream over the matching entities, which must be closed once done
+	 *
+	 * @return stream of all matching entities
+	 */
+	public Stream<T> stream() {
+		final EntityCursor<T> cursor = iterator();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL),
+				false).onClose(new Runnable() {
+			@Override
+			public void run() {
+				cursor.close();
+			}
+		});
+	}
+
+	/**
+	 * executes the query and returns the first matching entity
+	 *
+	 * @return first matching entity or null if no entity matches
+	 */
+	public T first() {
+		try (EntityCursor<T> cursor = iterator(1)) {
+			return cursor.hasNext() ? cursor.next() : null;
+		}
+	}
+
+	/**
+	 * returns the number of entities matching the filter of this query, ignoring skip and limit
+	 */
+	public long count() {
+		return collection.count(getFilter());
+	}
+
+	/**
+	 * returns the filter this query results in
+	 */
+	Document getFilter() {
+		switch (conditions.size()) {
+		case 0:
+			return new Document();
+		case 1:
+			return conditions.get(0);
+		default:
+			return new Document("$and", conditions);
+		}
+	}
+
+	private Query<T> condition(String property, String operator, Object value) {
+		ParameterProperty pp = checkProperty(property);
+		conditions.add(new Document(pp.getMongoName(), new Document(operator, toMongo(pp, value))));
+		return this;
+	}
+
+	/**
+	 * verifies that the given property exists and is stored within MongoDB
+	 */
+	private ParameterProperty checkProperty(String property) {
+		ParameterProperty pp = properties.getProperty(property);
+		checkArgument(pp != null, "Unknown property %s, not declared for Entity %s", property,
+				properties.getEntityClass());
+		checkArgument(!pp.isTransient(), "Property %s of Entity %s is transient and can't be queried", property,
+				properties.getEntityClass());
+		return pp;
+	}
+
+	/**
+	 * converts the given value of the given property into its representation within MongoDB. Referenced entities are
+	 * represented by their id or DBRef
+	 */
+	private static Object toMongo(ParameterProperty pp, Object value) {
+		if (value instanceof Enum) {
+			return ((Enum<?>) value).name();
+		}
+		if (value instanceof Entity && pp.isReference()) {
+			Entity e = (Entity) value;
+			Object id = EntityInvocationHandler.getHandler(e).getId();
+			if (pp.isDBRef()) {
+				return new Document("$ref", EntityFactory.getProperties(e.entityClass()).getCollectionName()).append(
+						"$id", id);
+			}
+			return id;
+		}
+		return value;
+	}
+}
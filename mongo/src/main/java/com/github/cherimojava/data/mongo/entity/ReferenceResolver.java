@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.cherimojava.data.mongo.metrics.Instrumentation;
+import com.github.cherimojava.data.mongo.metrics.Operation;
+import com.google.common.collect.Maps;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Collects the references which are found while decoding entities and resolves them in bulk, with a single $in query
+ * per referenced entity class instead of one query per reference. Resolution happens once the outermost scope is
+ * closed, so a scope opened around decoding multiple documents (e.g. the whole result of a query) resolves the
+ * references of all of them at once. Until resolved the references are lazy entities, which load themselves if they're
+ * accessed earlier. Scopes are bound to the current thread and the factory they're opened for. Scopes completing
+ * exceptionally don't resolve anything, their references stay lazy.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class ReferenceResolver implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ReferenceResolver.class);
+
+	private static final ThreadLocal<Map<EntityFactory, ReferenceResolver>> current = new ThreadLocal<>();
+
+	/**
+	 * factory used to create and load the referenced entities
+	 */
+	private final EntityFactory factory;
+
+	/**
+	 * number of currently open scopes, references are resolved once the last one is closed
+	 */
+	private int depth = 0;
+
+	/**
+	 * depth of the scope which was completed last, references are only resolved if the outermost scope completed
+	 */
+	private int completed = 0;
+
+	/**
+	 * references waiting to be resolved, by entity class and id
+	 */
+	private final Map<Class<? extends Entity>, Map<Object, Entity>> pending = Maps.newLinkedHashMap();
+
+	/**
+	 * references which were already resolved, by entity class and id. Allows to reuse them for references found while
+	 * resolving (e.g. cyclic references)
+	 */
+	private final Map<Class<? extends Entity>, Map<Object, Entity>> resolved = Maps.newHashMap();
+
+	private ReferenceResolver(EntityFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * opens a new scope. If there's already an open scope of the given factory for the current thread it's joined,
+	 * otherwise a new resolver is created which loads referenced entities through the given factory. Once the work
+	 * within the scope is done {@link #complete()} must be called before the scope is closed, otherwise nothing is
+	 * resolved
+	 *
+	 * @param factory
+	 *            used to load referenced entities
+	 * @return resolver of the current thread and factory, which needs to be closed once the scope ends
+	 */
+	public static ReferenceResolver open(EntityFactory factory) {
+		Map<EntityFactory, ReferenceResolver> resolvers = current.get();
+		if (resolvers == null) {
+			resolvers = Maps.newIdentityHashMap();
+			current.set(resolvers);
+		}
+		ReferenceResolver resolver = resolvers.get(factory);
+		if (resolver == null) {
+			resolver = new ReferenceResolver(factory);
+			resolvers.put(factory, resolver);
+		}
+		resolver.depth++;
+		return resolver;
+	}
+
+	/**
+	 * returns the resolver of the currently open scope of the given factory
+	 *
+	 * @param factory
+	 *            factory the scope was opened for
+	 * @return resolver of the current thread and factory
+	 * @throws IllegalStateException
+	 *             if no scope is open for the current thread and factory
+	 */
+	public static ReferenceResolver current(EntityFactory factory) {
+		Map<EntityFactory, ReferenceResolver> resolvers = current.get();
+		ReferenceResolver resolver = resolvers != null ? resolvers.get(factory) : null;
+		checkState(resolver != null, "No reference resolver scope is open");
+		return resolver;
+	}
+
+	/**
+	 * returns an entity for the given reference, which gets resolved once the outermost scope is closed. References to
+	 * the same entity return the same instance within a resolver
+	 *
+	 * @param clazz
+	 *            entity class of the reference
+	 * @param id
+	 *            id of the referenced entity
+	 * @return (not yet resolved) entity for the reference
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Entity> E reference(Class<E> clazz, Object id) {
+		Map<Object, Entity> known = resolved.get(clazz);
+		if (known != null && known.containsKey(id)) {
+			return (E) known.get(id);
+		}
+		Map<Object, Entity> refs = pending.get(clazz);
+		if (refs == null) {
+			refs = Maps.newLinkedHashMap();
+			pending.put(clazz, refs);
+		}
+		E reference = (E) refs.get(id);
+		if (reference == null) {
+			reference = factory.createLazy(clazz, id);
+			refs.put(id, reference);
+		}
+		return reference;
+	}
+
+	/**
+	 * marks the innermost open scope as completed normally. Must be the last call within the scope
+	 */
+	public void complete() {
+		checkState(depth > 0, "Reference resolver scope was already closed");
+		completed = depth;
+	}
+
+	/**
+	 * closes the scope, if this was the outermost scope and it was completed all pending references are resolved
+	 */
+	@Override
+	public void close() {
+		checkState(depth > 0, "Reference resolver scope was already closed");
+		if (depth > 1) {
+			depth--;
+			return;
+		}
+		// keep the scope open while resolving, so references found while resolving are collected as well
+		try {
+			if (completed == 1) {
+				resolve();
+			} else {
+				LOG.debug("Scope didn't complete, leaving {} entity classes with pending references lazy",
+						pending.size());
+			}
+		} finally {
+			depth = 0;
+			Map<EntityFactory, ReferenceResolver> resolvers = current.get();
+			resolvers.remove(factory);
+			if (resolvers.isEmpty()) {
+				current.remove();
+			}
+		}
+	}
+
+	/**
+	 * resolves all pending references, until there are no more references found
+	 */
+	@SuppressWarnings("unchecked")
+	private void resolve() {
+		while (!pending.isEmpty()) {
+			Iterator<Map.Entry<Class<? extends Entity>, Map<Object, Entity>>> it = pending.entrySet().iterator();
+			Map.Entry<Class<? extends Entity>, Map<Object, Entity>> entry = it.next();
+			it.remove();
+			Class<? extends Entity> clazz = entry.getKey();
+			Map<Object, Entity> refs = entry.getValue();
+
+			Map<Object, Entity> known = resolved.get(clazz);
+			if (known == null) {
+				known = Maps.newHashMap();
+				resolved.put(clazz, known);
+			}
+			known.putAll(refs);
+
+			// references might be already loaded entities, if the factory keeps an identity map
+			Map<Object, Entity> lazy = Maps.newLinkedHashMap();
+			for (Map.Entry<Object, Entity> ref : refs.entrySet()) {
+				if (EntityInvocationHandler.getHandler(ref.getValue()).isLazy()) {
+					lazy.put(ref.getKey(), ref.getValue());
+				}
+			}
+			if (lazy.isEmpty()) {
+				continue;
+			}
+			LOG.debug("Resolving {} references of entity class {}", lazy.size(), clazz);
+			Instrumentation instrumentation = factory.getInstrumentation();
+			long start = instrumentation.start(clazz, Operation.RESOLVE_REFERENCES);
+			try {
+				Map<Object, Entity> loaded = EntityInvocationHandler.findAll(
+						(MongoCollection<Entity>) factory.getCollection(clazz), lazy.keySet());
+				for (Map.Entry<Object, Entity> ref : lazy.entrySet()) {
+					Entity e = loaded.get(ref.getKey());
+					EntityInvocationHandler.getHandler(ref.getValue()).resolve(
+							e != null ? EntityInvocationHandler.getHandler(e) : null);
+				}
+			} finally {
+				instrumentation.stop(clazz, Operation.RESOLVE_REFERENCES, start);
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.mongodb.bulk.BulkWriteError;
+
+/**
+ * Result of saving multiple entities at once through {@link EntityFactory#saveAll(Iterable, boolean)}. Contains for
+ * each entity, in the order they were given, the outcome of saving it
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class SaveResult {
+
+	/**
+	 * Outcome of saving a single entity
+	 */
+	public static enum Outcome {
+		/**
+		 * entity was written to MongoDB
+		 */
+		SAVED,
+		/**
+		 * entity had no modifications, so nothing was written
+		 */
+		UNCHANGED,
+		/**
+		 * writing the entity failed, see {@link SaveResult#getError(int)} for details
+		 */
+		FAILED,
+		/**
+		 * entity was removed from MongoDB meanwhile, so its modifications weren't written
+		 */
+		NOT_FOUND,
+		/**
+		 * entity wasn't written as an earlier write failed and writes were ordered
+		 */
+		NOT_EXECUTED
+	}
+
+	private final List<Entity> entities;
+	private final Outcome[] outcomes;
+	private final Map<Integer, BulkWriteError> errors = Maps.newHashMap();
+
+	SaveResult(List<Entity> entities) {
+		this.entities = Collections.unmodifiableList(entities);
+		outcomes = new Outcome[entities.size()];
+		Arrays.fill(outcomes, Outcome.NOT_EXECUTED);
+	}
+
+	void setOutcome(int index, Outcome outcome) {
+		outcomes[index] = outcome;
+	}
+
+	void setError(int index, BulkWriteError error) {
+		outcomes[index] = Outcome.FAILED;
+		errors.put(index, error);
+	}
+
+	/**
+	 * returns the entities which were requested to be saved, in the order they were given
+	 */
+	public List<Entity> getEntities() {
+		return entities;
+	}
+
+	/**
+	 * returns the outcome of saving the entity at the given position
+	 *
+	 * @param index
+	 *            position of the entity within {@link #getEntities()}
+	 * @return outcome of saving the entity
+	 */
+	public Outcome getOutcome(int index) {
+		return outcomes[index];
+	}
+
+	/**
+	 * returns the error reported by MongoDB for the entity at the given position
+	 *
+	 * @param index
+	 *            position of the entity within {@link #getEntities()}
+	 * @return error of the entity or null if saving it didn't fail
+	 */
+	public BulkWriteError getError(int index) {
+		return errors.get(index);
+	}
+
+	/**
+	 * returns how many entities have the given outcome
+	 *
+	 * @param outcome
+	 *            to count entities for
+	 * @return number of entities having the given outcome
+	 */
+	public int getCount(Outcome outcome) {
+		int count = 0;
+		for (Outcome o : outcomes) {
+			if (o == outcome) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * returns if all entities were either saved or had nothing to save
+	 */
+	public boolean isSuccessful() {
+		return getCount(Outcome.FAILED) == 0 && getCount(Outcome.NOT_FOUND) == 0
+				&& getCount(Outcome.NOT_EXECUTED) == 0;
+	}
+}
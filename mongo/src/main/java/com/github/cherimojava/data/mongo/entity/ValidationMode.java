@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+/**
+ * Defines when the constraints of entity properties are validated. The mode applies to entities of an Entity class
+ * annotated with {@link com.github.cherimojava.data.mongo.entity.annotation.Validate} or otherwise to all entities
+ * created through an EntityFactory
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public enum ValidationMode {
+	/**
+	 * each value set is validated, including the values read from MongoDB. Entities are validated again on save
+	 */
+	ON_SET,
+	/**
+	 * entities are validated only on save, values set or read from MongoDB are trusted until then
+	 */
+	ON_SAVE,
+	/**
+	 * entities are never validated, only the type of values set is checked
+	 */
+	NONE
+}
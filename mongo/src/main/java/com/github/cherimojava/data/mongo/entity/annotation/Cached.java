@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks an Entity class whose entities are cached by each EntityFactory once loaded by id, so that loading them again
+ * (through EntityFactory.load, Entity.load or lazy references) doesn't require a round trip to MongoDB. Saving or
+ * dropping an entity through the same factory invalidates its cache entry, changes done through other factories or
+ * processes become visible once the entry expired. Best suited for slowly changing entities
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+
+	/**
+	 * maximum number of entities kept in the cache
+	 */
+	public long maximumSize() default 1000;
+
+	/**
+	 * time after which a cached entity expires, once it was loaded. 0 or less means entities don't expire
+	 */
+	public long expireAfterWrite() default 0;
+
+	/**
+	 * time unit of expireAfterWrite
+	 */
+	public TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -35,4 +35,18 @@ public @interface Collection {
 	 * Index definitions for this Collection
 	 */
 	public Index[] indexes() default {};
+
+	/**
+	 * Whether saving an entity, which has an id but isn't known to be persisted yet, is done as a single upsert. If
+	 * false such entities are inserted, failing if an entity with the same id exists already
+	 */
+	public boolean upsert() default true;
+
+	/**
+	 * Whether loaded entities keep the raw document and decode each property only once it's accessed, instead of
+	 * decoding all properties right away. Suited for large documents of which only few properties are accessed.
+	 * Properties not decoded and fields unknown to the entity class are written back from the raw document if the
+	 * whole entity is written
+	 */
+	public boolean lazyDecoding() default false;
 }
@@ -15,26 +15,31 @@
  */
 package com.github.cherimojava.data.mongo.io;
 
-import static com.github.cherimojava.data.mongo.entity.Entity.ID;
 import static java.lang.String.format;
 
 import java.io.IOException;
 import java.io.StringWriter;
-import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
 import org.bson.BsonObjectId;
 import org.bson.BsonReader;
 import org.bson.BsonString;
 import org.bson.BsonType;
 import org.bson.BsonValue;
 import org.bson.BsonWriter;
-import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonValueCodec;
 import org.bson.codecs.Codec;
 import org.bson.codecs.CollectibleCodec;
 import org.bson.codecs.DecoderContext;
 import org.bson.codecs.EncoderContext;
+import org.bson.codecs.RawBsonDocumentCodec;
+import org.bson.codecs.configuration.CodecConfigurationException;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.json.JsonWriter;
 import org.bson.types.ObjectId;
@@ -43,11 +48,18 @@ import org.slf4j.LoggerFactory;
 
 import com.github.cherimojava.data.mongo.entity.Entity;
 import com.github.cherimojava.data.mongo.entity.EntityFactory;
+import com.github.cherimojava.data.mongo.entity.EntityInternals;
 import com.github.cherimojava.data.mongo.entity.EntityProperties;
 import com.github.cherimojava.data.mongo.entity.EntityUtils;
+import com.github.cherimojava.data.mongo.entity.IdentityMap;
 import com.github.cherimojava.data.mongo.entity.ParameterProperty;
+import com.github.cherimojava.data.mongo.entity.Projection;
+import com.github.cherimojava.data.mongo.entity.ReferenceResolver;
+import com.github.cherimojava.data.mongo.metrics.Instrumentation;
+import com.github.cherimojava.data.mongo.metrics.Operation;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 
@@ -64,14 +76,54 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 	private final Class<T> clazz;
 	private final EntityFactory factory;
 	private final CodecRegistry codecRegistry;
+	private final Projection projection;
+	/**
+	 * encode plans of the entity classes written through this codec, which includes embedded entity classes
+	 */
+	private final Map<Class<? extends Entity>, List<PropertyEncoder>> encodePlans = Maps.newConcurrentMap();
+	/**
+	 * decode plans of the entity classes read through this codec, mapping each field name to the decoder of the
+	 * property stored within
+	 */
+	private final Map<Class<? extends Entity>, Map<String, PropertyDecoder>> decodePlans = Maps.newConcurrentMap();
+	private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+	private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+	private static final RawBsonDocumentCodec rawCodec = new RawBsonDocumentCodec();
+	private static final BsonValueCodec valueCodec = new BsonValueCodec();
 	private static final Logger LOG = LoggerFactory.getLogger(EntityCodec.class);
-	private final MongoDatabase db;
 
 	public EntityCodec(MongoDatabase db, EntityProperties properties) {
+		this(EntityFactory.forDatabase(db), properties);
+	}
+
+	/**
+	 * creates a new EntityCodec, which creates decoded entities through the given factory
+	 *
+	 * @param factory
+	 *            EntityFactory used to create decoded entities
+	 * @param properties
+	 *            EntityProperties of the entity class this codec handles
+	 */
+	public EntityCodec(EntityFactory factory, EntityProperties properties) {
+		this(factory, properties, null);
+	}
+
+	/**
+	 * creates a new EntityCodec, which decodes documents loaded through the given projection into partially loaded
+	 * entities
+	 *
+	 * @param factory
+	 *            EntityFactory used to create decoded entities
+	 * @param properties
+	 *            EntityProperties of the entity class this codec handles
+	 * @param projection
+	 *            projection through which the decoded documents were loaded, null if they were loaded completely
+	 */
+	public EntityCodec(EntityFactory factory, EntityProperties properties, Projection projection) {
 		clazz = (Class<T>) properties.getEntityClass();
-		this.db = db;
-		factory = new EntityFactory(db);
-		codecRegistry = EntityCodecProvider.createCodecRegistry(db, clazz);
+		this.factory = factory;
+		this.projection = projection;
+		codecRegistry = factory.getCodecRegistry(clazz);
 	}
 
 	/**
@@ -82,8 +134,22 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 	 * @return
 	 */
 	public static MongoCollection<? extends Entity> getCollectionFor(MongoDatabase db, EntityProperties properties) {
-		return db.getCollection(properties.getCollectionName()).withDocumentClass(properties.getEntityClass()).withCodecRegistry(
-				EntityCodecProvider.createCodecRegistry(db, properties.getEntityClass()));
+		return getCollectionFor(EntityFactory.forDatabase(db), properties);
+	}
+
+	/**
+	 * Creates a MongoCollection which has a EntityCodec attached to it, which creates decoded entities through the
+	 * given factory
+	 *
+	 * @param factory
+	 * @param properties
+	 * @return
+	 */
+	public static MongoCollection<? extends Entity> getCollectionFor(EntityFactory factory,
+			EntityProperties properties) {
+		return factory.getDb().getCollection(properties.getCollectionName()).withDocumentClass(
+				properties.getEntityClass()).withCodecRegistry(
+				factory.getCodecRegistry(properties.getEntityClass()));
 	}
 
 	/*
@@ -148,106 +214,264 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 
 	@Override
 	public T decode(BsonReader reader, DecoderContext ctx) {
-		return decodeEntity(reader, clazz);
+		// eager references found within the document are resolved once the outermost scope is closed
+		try (ReferenceResolver resolver = ReferenceResolver.open(factory)) {
+			Instrumentation instrumentation = factory.getInstrumentation();
+			long start = instrumentation.start(clazz, Operation.DECODE);
+			int position = position(reader);
+			try {
+				T decoded = decodeDocument(reader);
+				resolver.complete();
+				return decoded;
+			} finally {
+				instrumentation.stop(clazz, Operation.DECODE, start);
+				if (position >= 0) {
+					instrumentation.size(clazz, Operation.DECODE, position(reader) - position);
+				}
+			}
+		}
+	}
+
+	/**
+	 * returns the number of bytes read so far by the given reader, -1 if the reader isn't reading binary
+	 */
+	private static int position(BsonReader reader) {
+		return reader instanceof BsonBinaryReader ? ((BsonBinaryReader) reader).getBsonInput().getPosition() : -1;
+	}
+
+	/**
+	 * decodes the document the reader is positioned at into an entity, unless the entity is already materialized
+	 */
+	private T decodeDocument(BsonReader reader) {
+		IdentityMap identityMap = factory.getIdentityMap();
+		if (identityMap != null) {
+			Object id = peekId(reader);
+			T loaded = id != null ? identityMap.getLoaded(clazz, id) : null;
+			if (loaded != null) {
+				// entity is already materialized, no need to decode it again
+				skipDocument(reader);
+				return loaded;
+			}
+		}
+		T e;
+		if (projection == null && EntityFactory.getProperties(clazz).isLazyDecoding()) {
+			e = decodeLazily(reader);
+		} else {
+			e = decodeEntity(reader, clazz, null);
+		}
+		if (projection != null) {
+			EntityInternals.loadedPartially(e, projection);
+		}
+		return identityMap != null ? identityMap.merge(e) : e;
+	}
+
+	/**
+	 * reads the id of the document the reader is positioned at, without consuming anything from the reader. MongoDB
+	 * stores the id always as first property of a document
+	 *
+	 * @return id of the document or null if the document doesn't start with an id
+	 */
+	private Object peekId(BsonReader reader) {
+		Object id = null;
+		reader.mark();
+		reader.readStartDocument();
+		if (reader.readBsonType() != BsonType.END_OF_DOCUMENT && Entity.ID.equals(reader.readName())) {
+			ParameterProperty idProperty = EntityFactory.getProperties(clazz).getIdProperty();
+			id = codecRegistry.get(idProperty.getType()).decode(reader, null);
+		}
+		reader.reset();
+		return id;
+	}
+
+	private static void skipDocument(BsonReader reader) {
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			reader.skipName();
+			reader.skipValue();
+		}
+		reader.readEndDocument();
 	}
 
-	private <E extends Entity> E decodeEntity(BsonReader reader, Class<E> clazz) {
-		E e = factory.create(clazz);
-		EntityProperties properties = EntityFactory.getProperties(clazz);
+	/**
+	 * decodes the entity the reader is positioned at
+	 *
+	 * @param parent
+	 *            entity the decoded entity is embedded in, null if the entity is stored in a collection of its own
+	 */
+	private <E extends Entity> E decodeEntity(BsonReader reader, Class<E> clazz, Entity parent) {
+		// embedded entities are never stored on their own, so there's no need to look up their collection
+		E e = parent == null ? factory.create(clazz) : factory.createEmbedded(clazz, parent);
+		Map<String, PropertyDecoder> plan = getDecodePlan(EntityFactory.getProperties(clazz));
 		reader.readStartDocument();
 		BsonType type;
 		while ((type = reader.readBsonType()) != BsonType.END_OF_DOCUMENT) {
-			if (type == BsonType.DOCUMENT) {
-				String name = reader.readName();
-				ParameterProperty pp = properties.getProperty(name);
-				if (pp == null) {
-					LOG.debug("Found subdocument named {}, but this subdocument isn't known for Entity {}", name,
-							clazz.getSimpleName());
-					reader.skipValue();
-					continue;
+			String name = reader.readName();
+			PropertyDecoder decoder = plan.get(name);
+			if (decoder == null) {
+				LOG.debug("Found property named {}, but this property isn't known for Entity {}", name,
+						clazz.getSimpleName());
+				reader.skipValue();
+				continue;
+			}
+			decodeProperty(reader, type, e, decoder, false);
+		}
+		reader.readEndDocument();
+		EntityInternals.loaded(e);// mark as loaded after all properties are set
+		return e;
+	}
+
+	/**
+	 * creates an entity keeping the raw document the reader is positioned at, properties are decoded from the raw
+	 * document once they're accessed
+	 */
+	private T decodeLazily(BsonReader reader) {
+		RawBsonDocument raw = rawCodec.decode(reader, DecoderContext.builder().build());
+		T e = factory.create(clazz);
+		EntityInternals.decodeLazily(e, raw, this);
+		EntityInternals.loaded(e);
+		return e;
+	}
+
+	/**
+	 * decodes the given property of a lazily decoded entity from the raw document it was loaded from. If the raw
+	 * document doesn't contain the property, nothing is decoded
+	 *
+	 * @param e
+	 *            lazily decoded entity to decode the property for
+	 * @param raw
+	 *            raw document the entity was loaded from
+	 * @param pp
+	 *            property to decode
+	 */
+	public void decodeProperty(T e, RawBsonDocument raw, ParameterProperty pp) {
+		try (ReferenceResolver resolver = ReferenceResolver.open(factory);
+				BsonBinaryReader reader = new BsonBinaryReader(raw.getByteBuffer().asNIO())) {
+			PropertyDecoder decoder = getDecodePlan(EntityFactory.getProperties(clazz)).get(pp.getMongoName());
+			reader.readStartDocument();
+			BsonType type;
+			while ((type = reader.readBsonType()) != BsonType.END_OF_DOCUMENT) {
+				if (pp.getMongoName().equals(reader.readName())) {
+					decodeProperty(reader, type, e, decoder, true);
+					break;
 				}
+				reader.skipValue();
+			}
+			resolver.complete();
+		}
+	}
 
-				EntityProperties seProperties = getEntityProperties(clazz, name);
-				if (pp.isReference()) {
-					// Entity is only stored as reference, so we can only read the id from it
-					reader.readStartDocument();
-					// read the references collection, but we know where the reference belongs to, so discard
-					reader.readString("$ref");
-					reader.readName("$id");
-					e.set(name, getSubEntity(seProperties, pp, reader));
-					reader.readEndDocument();
-				} else {
-					e.set(name, decodeEntity(reader, seProperties.getEntityClass()));
+	/**
+	 * returns the decoders of the properties of the given entity class by their field names. The plan is compiled once
+	 * per entity class, resolving the codecs and entity properties of referenced or embedded entities in advance
+	 */
+	private Map<String, PropertyDecoder> getDecodePlan(EntityProperties properties) {
+		Map<String, PropertyDecoder> plan = decodePlans.get(properties.getEntityClass());
+		if (plan == null) {
+			plan = Maps.newHashMap();
+			for (ParameterProperty pp : properties.getProperties()) {
+				EntityProperties seProperties = null;
+				Codec codec = null;
+				if (Entity.class.isAssignableFrom(pp.getType())) {
+					seProperties = EntityFactory.getProperties((Class<? extends Entity>) pp.getType());
+				} else if (pp.isCollection() && Entity.class.isAssignableFrom(pp.getGenericType())) {
+					seProperties = EntityFactory.getProperties((Class<? extends Entity>) pp.getGenericType());
+				} else if (!pp.isTransient() && !pp.isComputed() && !pp.isPrimitive() && !pp.getType().isEnum()) {
+					codec = getCodecOrNull(pp.getType());
 				}
+				plan.put(pp.getMongoName(), new PropertyDecoder(pp, seProperties, codec));
+			}
+			decodePlans.put(properties.getEntityClass(), plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * decodes the value of the given property the reader is positioned at and stores it in the given entity
+	 *
+	 * @param lazily
+	 *            true if the value is decoded for a lazily decoded entity, such values are stored without validation
+	 */
+	private <E extends Entity> void decodeProperty(BsonReader reader, BsonType type, E e, PropertyDecoder decoder,
+			boolean lazily) {
+		ParameterProperty pp = decoder.property;
+		String name = pp.getMongoName();
+		Object value;
+		if (type == BsonType.DOCUMENT && decoder.entityProperties != null) {
+			EntityProperties seProperties = decoder.entityProperties;
+			if (pp.isReference()) {
+				// Entity is only stored as reference, so we can only read the id from it
+				reader.readStartDocument();
+				// read the references collection, but we know where the reference belongs to, so discard
+				reader.readString("$ref");
+				reader.readName("$id");
+				value = getSubEntity(seProperties, pp, reader);
+				reader.readEndDocument();
 			} else {
-				String propertyName = reader.readName();
-				ParameterProperty pp = properties.getProperty(propertyName);
-				if (pp == null) {
-					LOG.debug("Found property named {}, but this property isn't known for Entity {}", propertyName,
-							clazz.getSimpleName());
-					reader.skipValue();
-					continue;
-				}
-				if (pp.isReference()) {
-					// later one should never be true
-					if (!pp.isCollection()) {
-						EntityProperties seProperties = getEntityProperties(clazz, propertyName);
-						e.set(propertyName, getSubEntity(seProperties, pp, reader));
-					} else {
-						EntityProperties seProperties = EntityFactory.getProperties((Class<? extends Entity>) pp.getGenericType());
-						reader.readStartArray();
-						Collection<E> coll = getNewCollection(pp.getType());
-						while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
-							if (pp.isDBRef()) {
-								reader.readStartDocument();
-								reader.readString("$ref");
-								reader.readName();
-								coll.add((E) getSubEntity(seProperties, pp, reader));
-								reader.readEndDocument();
-							} else {
-								coll.add((E) getSubEntity(seProperties, pp, reader));
-							}
-						}
-						e.set(propertyName, coll);
-						reader.readEndArray();
-					}
-					continue;
-				}
-				if (pp.isTransient() || pp.isComputed()) {
-					// transient values aren't read, even tough they're written (by earlier version of Entity, etc.)
-					// same is true for computed, even tough they're written it's value won't be used, so skip it
-					reader.skipValue();// send value to /dev/null
-					continue;
-				}
-				if (pp.getType().isEnum()) {
-					String enumString = reader.readString();
-					try {
-						e.set(propertyName, Enum.valueOf((Class<? extends Enum>) pp.getType(), enumString));
-					} catch (IllegalArgumentException iae) {
-						throw new IllegalArgumentException(format(
-								"String %s doesn't match any declared enum value of enum %s", enumString, pp.getType()));
-					}
-				} else {
-					if (pp.isCollection() && Entity.class.isAssignableFrom(pp.getGenericType())) {
-						e.set(propertyName, decodeArray(reader, pp));
+				value = decodeEntity(reader, seProperties.getEntityClass(), e);
+			}
+		} else if (pp.isReference()) {
+			// later one should never be true
+			if (!pp.isCollection()) {
+				value = getSubEntity(decoder.entityProperties, pp, reader);
+			} else {
+				EntityProperties seProperties = decoder.entityProperties;
+				reader.readStartArray();
+				Collection<E> coll = getNewCollection(pp.getType());
+				while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+					if (pp.isDBRef()) {
+						reader.readStartDocument();
+						reader.readString("$ref");
+						reader.readName();
+						coll.add((E) getSubEntity(seProperties, pp, reader));
+						reader.readEndDocument();
 					} else {
-						e.set(propertyName,
-								codecRegistry.get(pp.getType()).decode(reader, null));
+						coll.add((E) getSubEntity(seProperties, pp, reader));
 					}
 				}
+				reader.readEndArray();
+				value = coll;
+			}
+		} else if (pp.isTransient() || pp.isComputed()) {
+			// transient values aren't read, even tough they're written (by earlier version of Entity, etc.)
+			// same is true for computed, even tough they're written it's value won't be used, so skip it
+			reader.skipValue();// send value to /dev/null
+			return;
+		} else if (pp.isPrimitive()) {
+			// read primitives directly into the entity, no need to box them
+			if (lazily) {
+				EntityInternals.putDecodedPrimitive(e, pp, readPrimitive(reader, pp));
+			} else {
+				EntityInternals.setPrimitive(e, pp, readPrimitive(reader, pp));
+			}
+			return;
+		} else if (pp.getType().isEnum()) {
+			String enumString = reader.readString();
+			try {
+				value = Enum.valueOf((Class<? extends Enum>) pp.getType(), enumString);
+			} catch (IllegalArgumentException iae) {
+				throw new IllegalArgumentException(format(
+						"String %s doesn't match any declared enum value of enum %s", enumString, pp.getType()));
 			}
+		} else if (pp.isCollection() && Entity.class.isAssignableFrom(pp.getGenericType())) {
+			value = decodeArray(reader, pp, decoder.entityProperties, e);
+		} else {
+			Codec codec = decoder.codec != null ? decoder.codec : codecRegistry.get(pp.getType());
+			value = codec.decode(reader, null);
+		}
+		if (lazily) {
+			EntityInternals.putDecoded(e, pp, value);
+		} else {
+			e.set(name, value);
 		}
-		reader.readEndDocument();
-		EntityUtils.persist(e);// persist after all properties are set
-		return e;
 	}
 
-	private <E extends Entity> Collection<E> decodeArray(BsonReader reader, ParameterProperty props) {
+	private <E extends Entity> Collection<E> decodeArray(BsonReader reader, ParameterProperty props,
+			EntityProperties seProperties, Entity parent) {
 		Collection<E> coll = getNewCollection(props.getType());
 
 		reader.readStartArray();
 		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
-			coll.add(decodeEntity(reader, (Class<E>) props.getGenericType()));
+			coll.add(decodeEntity(reader, (Class<E>) seProperties.getEntityClass(), parent));
 		}
 		reader.readEndArray();
 		return coll;
@@ -280,8 +504,25 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 	}
 
 	private void encodeInternal(BsonWriter bsonWriter, T value, EncoderContext ctx) {
-		// right now the context doesn't contain anything we care about, ignore it
-		encode(bsonWriter, value, true, Lists.<T> newArrayList());
+		Instrumentation instrumentation = factory.getInstrumentation();
+		long start = instrumentation.start(clazz, Operation.ENCODE);
+		int position = position(bsonWriter);
+		try {
+			// right now the context doesn't contain anything we care about, ignore it
+			encode(bsonWriter, value, Lists.<T> newArrayList());
+		} finally {
+			instrumentation.stop(clazz, Operation.ENCODE, start);
+			if (position >= 0) {
+				instrumentation.size(clazz, Operation.ENCODE, position(bsonWriter) - position);
+			}
+		}
+	}
+
+	/**
+	 * returns the number of bytes written so far by the given writer, -1 if the writer isn't writing binary
+	 */
+	private static int position(BsonWriter writer) {
+		return writer instanceof BsonBinaryWriter ? ((BsonBinaryWriter) writer).getBsonOutput().getPosition() : -1;
 	}
 
 	/**
@@ -291,25 +532,17 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 	 *            writer to write to
 	 * @param value
 	 *            value to write
-	 * @param toDB
-	 *            is this just a toString() call or a real persisting action
 	 */
-	private void encodeEntity(BsonWriter writer, T value, boolean toDB, List<T> cycleBreaker) {
+	private void encodeEntity(BsonWriter writer, T value, List<T> cycleBreaker) {
 		EntityProperties properties = EntityFactory.getProperties(value.entityClass());
 
+		Object id = EntityInternals.getValue(value, properties.getIdProperty());
 		if (cycleBreaker.contains(value)) {
-			LOG.debug("detected cycle for type {} with id {}.", properties.getEntityClass().getCanonicalName(),
-					value.get(Entity.ID));
+			LOG.debug("detected cycle for type {} with id {}.", properties.getEntityClass().getCanonicalName(), id);
 			return;// we already visited this entity
 		}
 		cycleBreaker.add(value);// add the entity so we can check what we already visited
 
-		if (toDB) {
-			// mark this entity as persisted, but only if the caller isnt toString (this screws up debugging)
-			EntityUtils.persist(value);
-		}
-
-		Object id = value.get(Entity.ID);
 		if (id != null && !properties.hasExplicitId()) {
 			// this is needed to write the object id, which at this time should be set in case it wasn't before
 			// only write out the id if it's not explicitly declared
@@ -318,73 +551,198 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 			codec.encode(writer, id, null);
 		}
 
-		for (Method method : value.entityClass().getMethods()) {
-			// TODO we wanna test this inheritance
-			if (method.getName().startsWith("get") && method.getName().length() > 3) {
-				ParameterProperty pp = properties.getProperty(method);
-				String propertyName = pp.getMongoName();
-				if (pp.isTransient() || value.get(propertyName) == null) {
-					// transient properties aren't encoded
-					// null isn't encoded
-					continue;
+		for (PropertyEncoder encoder : getEncodePlan(properties)) {
+			encodeProperty(writer, value, encoder.property, encoder.codec, cycleBreaker);
+		}
+		RawBsonDocument raw = EntityUtils.getRawDocument(value);
+		if (raw != null) {
+			encodeUnknownFields(writer, raw, properties);
+		}
+		cycleBreaker.remove(value);
+	}
+
+	/**
+	 * copies the fields of the given raw document which aren't known to the entity, so that writing the entity back
+	 * doesn't drop them. The raw bytes are scanned directly, so known fields are skipped without decoding them
+	 */
+	private void encodeUnknownFields(BsonWriter writer, RawBsonDocument raw, EntityProperties properties) {
+		try (BsonBinaryReader reader = new BsonBinaryReader(raw.getByteBuffer().asNIO())) {
+			reader.readStartDocument();
+			BsonType type;
+			while ((type = reader.readBsonType()) != BsonType.END_OF_DOCUMENT) {
+				String name = reader.readName();
+				if (Entity.ID.equals(name) || properties.getProperty(name) != null) {
+					reader.skipValue();
+				} else if (type == BsonType.DOCUMENT) {
+					writer.writeName(name);
+					writer.pipe(reader);
+				} else {
+					// the driver only pipes whole documents, so other values are copied one by one
+					writer.writeName(name);
+					valueCodec.encode(writer, valueCodec.decode(reader, DECODER_CONTEXT), ENCODER_CONTEXT);
 				}
-				if (pp.isReference()) {
-					if (!pp.isCollection()) {
-						EntityProperties seProperties = EntityFactory.getProperties((Class<? extends Entity>) pp.getType());
-						Entity subEntity = (Entity) value.get(propertyName);
-						Object eid = EntityCodec._obtainId(subEntity);
-						// this is just for compatibility with other tools, due to our Schema information we know where
-						// this
-						// comes from
-						if (pp.isDBRef()) {
-							// if this is meant to be stored as Mongo DBRef we need to add parts
-							writer.writeStartDocument(propertyName);
-							writer.writeString("$ref", seProperties.getCollectionName());
-							writer.writeName("$id");
-							writeId(eid, writer);
-							writer.writeEndDocument();
-						} else {
-							writer.writeName(propertyName);
-							writeId(eid, writer);
-						}
-					} else {
-						EntityProperties seProperties = EntityFactory.getProperties((Class<? extends Entity>) pp.getGenericType());
-						writer.writeStartArray(propertyName);
-						for (Entity subEntity : (Collection<Entity>) value.get(propertyName)) {
-							Object eid = EntityCodec._obtainId(subEntity);
-							if (pp.isDBRef()) {
-								writer.writeStartDocument();
-								writer.writeString("$ref", seProperties.getCollectionName());
-								writer.writeName("$id");
-								writeId(eid, writer);
-								writer.writeEndDocument();
-							} else {
-								writeId(eid, writer);
-							}
-						}
-
-						writer.writeEndArray();
-					}
+			}
+		}
+	}
+
+	/**
+	 * returns the properties of the given entity class in the order they're written. The plan is compiled once per
+	 * entity class, resolving the codec of each property which can hold only values of its declared type
+	 */
+	private List<PropertyEncoder> getEncodePlan(EntityProperties properties) {
+		List<PropertyEncoder> plan = encodePlans.get(properties.getEntityClass());
+		if (plan == null) {
+			plan = Lists.newArrayList();
+			for (ParameterProperty pp : properties.getProperties()) {
+				if (pp == properties.getIdProperty() && !properties.hasExplicitId()) {
+					// implicit ids are written upfront
 					continue;
 				}
+				plan.add(new PropertyEncoder(pp, getFinalCodec(pp)));
+			}
+			encodePlans.put(properties.getEntityClass(), plan);
+		}
+		return plan;
+	}
 
-				if (Entity.class.isAssignableFrom(method.getReturnType())) {
-					// we got some entity, so we need to recurse
-					writer.writeName(propertyName);
-					encode(writer, (T) value.get(propertyName), toDB, cycleBreaker);
-				} else if (method.getReturnType().isEnum()) {
-					// enum handling
-					writer.writeString(propertyName, ((Enum) value.get(propertyName)).name());
+	/**
+	 * returns the codec for simple properties of a final type, null if the codec depends on the actual value
+	 */
+	private Codec getFinalCodec(ParameterProperty pp) {
+		Class<?> type = pp.getType();
+		if (pp.isPrimitive() || pp.isTransient() || pp.isReference() || type.isEnum() || type.isArray()
+				|| Entity.class.isAssignableFrom(type) || !Modifier.isFinal(type.getModifiers())) {
+			return null;
+		}
+		return getCodecOrNull(type);
+	}
+
+	/**
+	 * returns the codec for the given type, null if there's no codec for the type
+	 */
+	private Codec getCodecOrNull(Class<?> type) {
+		try {
+			return codecRegistry.get(type);
+		} catch (CodecConfigurationException e) {
+			// no codec for this type, so there's nothing to resolve in advance
+			return null;
+		}
+	}
+
+	/**
+	 * encodes the given property of the entity. Nothing is written if the value is null or the property is transient
+	 *
+	 * @param writer
+	 *            writer to write to
+	 * @param value
+	 *            entity holding the property
+	 * @param pp
+	 *            property to write
+	 * @param codec
+	 *            codec to write simple values with, null if the codec shall be looked up for the actual value
+	 */
+	private void encodeProperty(BsonWriter writer, T value, ParameterProperty pp, Codec codec, List<T> cycleBreaker) {
+		String propertyName = pp.getMongoName();
+		RawBsonDocument raw = EntityUtils.getRawDocument(value);
+		if (raw != null && !pp.isTransient() && !EntityUtils.isDecoded(value, pp)) {
+			// property wasn't accessed yet, so copy it straight from the raw document it was loaded from
+			BsonValue rawValue = raw.get(propertyName);
+			if (rawValue != null) {
+				writer.writeName(propertyName);
+				valueCodec.encode(writer, rawValue, ENCODER_CONTEXT);
+			}
+			return;
+		}
+		if (pp.isPrimitive()) {
+			// write primitives directly from the entity, no need to box them
+			if (EntityUtils.hasPrimitive(value, pp)) {
+				writer.writeName(propertyName);
+				writePrimitive(writer, pp, EntityUtils.getPrimitive(value, pp));
+			}
+			return;
+		}
+		if (pp.isTransient()) {
+			// transient properties aren't encoded
+			return;
+		}
+		// read the value without exposing it, so that encoding doesn't mark the property as modified
+		Object v = EntityInternals.getValue(value, pp);
+		if (v == null) {
+			// null isn't encoded
+			return;
+		}
+		if (pp.isReference()) {
+			if (!pp.isCollection()) {
+				EntityProperties seProperties = EntityFactory.getProperties((Class<? extends Entity>) pp.getType());
+				Object eid = EntityCodec._obtainId((Entity) v);
+				// this is just for compatibility with other tools, due to our Schema information we know where
+				// this
+				// comes from
+				if (pp.isDBRef()) {
+					// if this is meant to be stored as Mongo DBRef we need to add parts
+					writer.writeStartDocument(propertyName);
+					writer.writeString("$ref", seProperties.getCollectionName());
+					writer.writeName("$id");
+					writeId(eid, writer);
+					writer.writeEndDocument();
 				} else {
-					// simple property
 					writer.writeName(propertyName);
-					Object v = value.get(propertyName);
-					Codec codec = codecRegistry.get(v.getClass());
-					codec.encode(writer, v, EncoderContext.builder().build());
+					writeId(eid, writer);
+				}
+			} else {
+				EntityProperties seProperties = EntityFactory.getProperties((Class<? extends Entity>) pp.getGenericType());
+				writer.writeStartArray(propertyName);
+				for (Entity subEntity : (Collection<Entity>) v) {
+					Object eid = EntityCodec._obtainId(subEntity);
+					if (pp.isDBRef()) {
+						writer.writeStartDocument();
+						writer.writeString("$ref", seProperties.getCollectionName());
+						writer.writeName("$id");
+						writeId(eid, writer);
+						writer.writeEndDocument();
+					} else {
+						writeId(eid, writer);
+					}
 				}
+
+				writer.writeEndArray();
 			}
+			return;
+		}
+
+		if (Entity.class.isAssignableFrom(pp.getType())) {
+			// we got some entity, so we need to recurse
+			writer.writeName(propertyName);
+			encode(writer, (T) v, cycleBreaker);
+		} else if (pp.getType().isEnum()) {
+			// enum handling
+			writer.writeString(propertyName, ((Enum) v).name());
+		} else {
+			// simple property
+			writer.writeName(propertyName);
+			if (codec == null) {
+				codec = codecRegistry.get(v.getClass());
+			}
+			codec.encode(writer, v, ENCODER_CONTEXT);
+		}
+	}
+
+	/**
+	 * encodes only the given properties of the entity. Writer must be positioned within a document, null values and
+	 * transient properties are skipped. Embedded entities are written completely
+	 *
+	 * @param writer
+	 *            writer to write to
+	 * @param value
+	 *            entity holding the properties
+	 * @param properties
+	 *            properties to write
+	 */
+	public void encodeProperties(BsonWriter writer, T value, Iterable<ParameterProperty> properties) {
+		List<T> cycleBreaker = Lists.newArrayList(value);
+		for (ParameterProperty pp : properties) {
+			encodeProperty(writer, value, pp, null, cycleBreaker);
 		}
-		cycleBreaker.remove(value);
 	}
 
 	private static void writeId(Object id, BsonWriter writer) {
@@ -395,13 +753,35 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 		}
 	}
 
-	private static EntityProperties getEntityProperties(Class clazz, String name) {
-		try {
-			return EntityFactory.getProperties((Class<? extends Entity>) clazz.getMethod(
-					"get" + EntityUtils.capitalize(name)).getReturnType());
+	/**
+	 * reads the current value as raw bits of the given primitive property
+	 */
+	private static long readPrimitive(BsonReader reader, ParameterProperty pp) {
+		Class<?> type = pp.getPrimitiveType();
+		if (type == int.class) {
+			return reader.readInt32();
+		} else if (type == long.class) {
+			return reader.readInt64();
+		} else if (type == double.class) {
+			return Double.doubleToRawLongBits(reader.readDouble());
+		} else {
+			return reader.readBoolean() ? 1 : 0;
+		}
+	}
 
-		} catch (NoSuchMethodException e1) {
-			throw new IllegalStateException(format("failed to read 'get%s()' on class %s. Should not happen", EntityUtils.capitalize(name), clazz));
+	/**
+	 * writes the raw bits of the given primitive property as value
+	 */
+	private static void writePrimitive(BsonWriter writer, ParameterProperty pp, long bits) {
+		Class<?> type = pp.getPrimitiveType();
+		if (type == int.class) {
+			writer.writeInt32((int) bits);
+		} else if (type == long.class) {
+			writer.writeInt64(bits);
+		} else if (type == double.class) {
+			writer.writeDouble(Double.longBitsToDouble(bits));
+		} else {
+			writer.writeBoolean(bits != 0);
 		}
 	}
 
@@ -411,13 +791,13 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 		if (pp.isLazyLoaded()) {
 			return factory.createLazy(seProperties.getEntityClass(), id);
 		} else {
-			return EntityCodec.getCollectionFor(db, seProperties).find(new Document(ID, id)).iterator().next();
+			return ReferenceResolver.current(factory).reference(seProperties.getEntityClass(), id);
 		}
 	}
 
-	private void encode(BsonWriter writer, T value, boolean toDB, List<T> cycleBreaker) {
+	private void encode(BsonWriter writer, T value, List<T> cycleBreaker) {
 		writer.writeStartDocument();
-		encodeEntity(writer, value, toDB, cycleBreaker);
+		encodeEntity(writer, value, cycleBreaker);
 		writer.writeEndDocument();
 	}
 
@@ -427,11 +807,45 @@ public class EntityCodec<T extends Entity> implements CollectibleCodec<T> {
 
 	public String asString(T value) {
 		try (StringWriter swriter = new StringWriter(); JsonWriter writer = new JsonWriter(swriter)) {
-			encode(writer, value, false, Lists.<T> newArrayList());
+			encode(writer, value, Lists.<T> newArrayList());
 			return swriter.toString();
 		} catch (IOException e) {
 			Throwables.propagate(e);
 			return null;
 		}
 	}
+
+	/**
+	 * decoder of a single property within a decode plan
+	 */
+	private static final class PropertyDecoder {
+		private final ParameterProperty property;
+		/**
+		 * properties of the referenced or embedded entity class, null if the property holds no entities
+		 */
+		private final EntityProperties entityProperties;
+		/**
+		 * codec of simple properties, null if the property isn't decoded through a codec
+		 */
+		private final Codec codec;
+
+		private PropertyDecoder(ParameterProperty property, EntityProperties entityProperties, Codec codec) {
+			this.property = property;
+			this.entityProperties = entityProperties;
+			this.codec = codec;
+		}
+	}
+
+	/**
+	 * single step of an encode plan, writing one property
+	 */
+	private static final class PropertyEncoder {
+		private final ParameterProperty property;
+		private final Codec codec;
+
+		private PropertyEncoder(ParameterProperty property, Codec codec) {
+			this.property = property;
+			this.codec = codec;
+		}
+	}
 }
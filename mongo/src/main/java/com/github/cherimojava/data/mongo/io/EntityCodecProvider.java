@@ -58,14 +58,18 @@ import com.mongodb.client.MongoDatabase;
 public class EntityCodecProvider implements CodecProvider {
 	private BsonTypeClassMap mapping;
 	private final Map<Class<?>, Codec<?>> codecs = new HashMap<>();
-	private final MongoDatabase db;
+	private final EntityFactory factory;
 
 	/**
 	 * Constructs a new instance with default {@link org.bson.codecs.BsonTypeClassMap}
 	 */
 	public EntityCodecProvider(MongoDatabase db, Class<? extends Entity> clazz) {
+		this(clazz, EntityFactory.forDatabase(db));
+	}
+
+	private EntityCodecProvider(Class<? extends Entity> clazz, EntityFactory factory) {
 		mapping = new EntityTypeMap(clazz);
-		this.db = db;
+		this.factory = factory;
 		addCodecs();
 	}
 
@@ -83,7 +87,7 @@ public class EntityCodecProvider implements CodecProvider {
 			// there are two possible class types we can get. Some are the real interfaces and the other classes are
 			// proxy based
 			Class<?> eclass = Proxy.isProxyClass(clazz) ? clazz.getInterfaces()[0] : clazz;
-			return (Codec<T>) new EntityCodec(db, EntityFactory.getProperties((Class<? extends Entity>) eclass));
+			return (Codec<T>) factory.getCodec((Class<? extends Entity>) eclass);
 		}
 
 		if (Document.class.isAssignableFrom(clazz)) {
@@ -125,13 +129,26 @@ public class EntityCodecProvider implements CodecProvider {
 	}
 
 	/**
-	 * creates a RootCodecRegistry with our EntityCodecProvider as sole CodecProvider
+	 * returns the RootCodecRegistry with our EntityCodecProvider as sole CodecProvider, which is shared by all users of
+	 * the given database
 	 * 
 	 * @param db
 	 * @param clazz
 	 * @return
 	 */
 	public static CodecRegistry createCodecRegistry(MongoDatabase db, Class<? extends Entity> clazz) {
-		return CodecRegistries.fromProviders(new EntityCodecProvider(db, clazz));
+		return EntityFactory.forDatabase(db).getCodecRegistry(clazz);
+	}
+
+	/**
+	 * creates a RootCodecRegistry with our EntityCodecProvider as sole CodecProvider, decoded entities are created
+	 * through the given factory
+	 *
+	 * @param factory
+	 * @param clazz
+	 * @return
+	 */
+	public static CodecRegistry createCodecRegistry(EntityFactory factory, Class<? extends Entity> clazz) {
+		return CodecRegistries.fromProviders(new EntityCodecProvider(clazz, factory));
 	}
 }
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.github.cherimojava.data.mongo.entity.Entity;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Instrumentation counting and timing operations per entity class, along with the sizes of the documents written and
+ * read. Statistics can be read through {@link #getStatistics(Class, Operation)} or through JMX, once registered with
+ * {@link #register(String)}.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class EntityMetrics implements Instrumentation, EntityMetricsMXBean {
+
+	/**
+	 * domain of the JMX object names metrics are registered with
+	 */
+	public static final String DOMAIN = "com.github.cherimojava.data";
+
+	private final ConcurrentMap<Class<? extends Entity>, Recorded[]> recorded = Maps.newConcurrentMap();
+
+	private ObjectName objectName;
+
+	@Override
+	public long start(Class<? extends Entity> clazz, Operation operation) {
+		return System.nanoTime();
+	}
+
+	@Override
+	public void stop(Class<? extends Entity> clazz, Operation operation, long start) {
+		get(clazz, operation).times.record(System.nanoTime() - start);
+	}
+
+	@Override
+	public void size(Class<? extends Entity> clazz, Operation operation, long bytes) {
+		get(clazz, operation).sizes.record(bytes);
+	}
+
+	private Recorded get(Class<? extends Entity> clazz, Operation operation) {
+		Recorded[] operations = recorded.get(clazz);
+		if (operations == null) {
+			operations = new Recorded[Operation.values().length];
+			for (int i = 0; i < operations.length; i++) {
+				operations[i] = new Recorded();
+			}
+			Recorded[] existing = recorded.putIfAbsent(clazz, operations);
+			if (existing != null) {
+				operations = existing;
+			}
+		}
+		return operations[operation.ordinal()];
+	}
+
+	/**
+	 * returns the statistics recorded for the given operation on the given entity class
+	 *
+	 * @param clazz
+	 *            entity class to get the statistics for
+	 * @param operation
+	 *            operation to get the statistics for
+	 * @return statistics of the operation, null if the operation was never executed for the entity class
+	 */
+	public OperationStatistics getStatistics(Class<? extends Entity> clazz, Operation operation) {
+		Recorded[] operations = recorded.get(clazz);
+		if (operations == null) {
+			return null;
+		}
+		Recorded r = operations[operation.ordinal()];
+		if (r.times.getCount() == 0 && r.sizes.getCount() == 0) {
+			return null;
+		}
+		return new OperationStatistics(clazz.getName(), operation.name(), r.times.getCount(),
+				micros(r.times.getSum()), micros(r.times.getValueAtPercentile(50)),
+				micros(r.times.getValueAtPercentile(99)), micros(r.times.getValueAtPercentile(99.9)),
+				micros(r.times.getMax()), r.sizes.getCount(), r.sizes.getValueAtPercentile(50),
+				r.sizes.getValueAtPercentile(99), r.sizes.getMax());
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	@Override
+	public List<OperationStatistics> getStatistics() {
+		List<OperationStatistics> statistics = Lists.newArrayList();
+		for (Class<? extends Entity> clazz : recorded.keySet()) {
+			for (Operation operation : Operation.values()) {
+				OperationStatistics s = getStatistics(clazz, operation);
+				if (s != null) {
+					statistics.add(s);
+				}
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public List<String> getEntityClasses() {
+		List<String> names = Lists.newArrayList();
+		for (Class<? extends Entity> clazz : recorded.keySet()) {
+			names.add(clazz.getName());
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	@Override
+	public void reset() {
+		recorded.clear();
+	}
+
+	/**
+	 * registers these metrics with the platform MBean server, under {@value #DOMAIN}:type=EntityFactory,name=<name>.
+	 * Metrics can be registered only once at a time
+	 *
+	 * @param name
+	 *            name distinguishing these metrics from the ones of other factories
+	 * @return object name the metrics were registered with
+	 */
+	public synchronized ObjectName register(String name) {
+		if (objectName != null) {
+			throw new IllegalStateException("Metrics are already registered as " + objectName);
+		}
+		try {
+			ObjectName on = new ObjectName(DOMAIN + ":type=EntityFactory,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			objectName = on;
+			return on;
+		} catch (JMException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	/**
+	 * removes these metrics from the platform MBean server, does nothing if they aren't registered
+	 */
+	public synchronized void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			objectName = null;
+		} catch (JMException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	/**
+	 * returns the object name these metrics are registered with in JMX, null if they aren't registered
+	 */
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * timings and document sizes recorded for an operation on an entity class
+	 */
+	private static final class Recorded {
+		private final Histogram times = new Histogram();
+		private final Histogram sizes = new Histogram();
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view on the {@link EntityMetrics} of an EntityFactory
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public interface EntityMetricsMXBean {
+
+	/**
+	 * returns the statistics of all operations executed so far, per entity class and operation
+	 */
+	public List<OperationStatistics> getStatistics();
+
+	/**
+	 * returns the names of all entity classes operations were executed for
+	 */
+	public List<String> getEntityClasses();
+
+	/**
+	 * forgets everything recorded so far
+	 */
+	public void reset();
+}
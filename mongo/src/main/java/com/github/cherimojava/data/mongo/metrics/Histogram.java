@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative values with power of two buckets. Percentiles are reported as upper bound of the
+ * bucket they fall into, so they're accurate up to a factor of two, which is good enough to spot the order of
+ * magnitude of latencies and document sizes while recording costs only a few atomic increments.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+final class Histogram {
+
+	/**
+	 * bucket i holds the values having i significant bits, bucket 0 holds 0
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * records the given value, negative values are recorded as 0
+	 */
+	void record(long value) {
+		value = Math.max(0, value);
+		buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// retry until either our value is stored or a larger one
+		}
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	long getSum() {
+		return sum.sum();
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * returns the value below which the given percentage of the recorded values are, 0 if nothing was recorded
+	 *
+	 * @param percentile
+	 *            percentage between 0 and 100
+	 */
+	long getValueAtPercentile(double percentile) {
+		long total = 0;
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		long threshold = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen > 0 && seen >= threshold) {
+				long upper = i == 0 ? 0 : i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1;
+				return Math.min(upper, getMax());
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import com.github.cherimojava.data.mongo.entity.Entity;
+
+/**
+ * Receives timings and document sizes of the operations an EntityFactory and the entities created through it execute.
+ * Each operation is reported by calling {@link #start(Class, Operation)} before and
+ * {@link #stop(Class, Operation, long)} after it.
+ * Implementations are called concurrently and must be thread safe. As they're called on each operation, they should be
+ * cheap. The default instrumentation {@link #NONE} records nothing and doesn't even read the clock.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public interface Instrumentation {
+
+	/**
+	 * instrumentation recording nothing
+	 */
+	public static final Instrumentation NONE = new Instrumentation() {
+		@Override
+		public long start(Class<? extends Entity> clazz, Operation operation) {
+			return 0;
+		}
+
+		@Override
+		public void stop(Class<? extends Entity> clazz, Operation operation, long start) {
+		}
+
+		@Override
+		public void size(Class<? extends Entity> clazz, Operation operation, long bytes) {
+		}
+	};
+
+	/**
+	 * called right before an operation is executed. Throwing an exception prevents the operation from being executed,
+	 * {@link #stop(Class, Operation, long)} isn't called in this case
+	 *
+	 * @param clazz
+	 *            entity class the operation is executed for
+	 * @param operation
+	 *            operation about to be executed
+	 * @return start of the operation, handed to {@link #stop(Class, Operation, long)} once the operation finished.
+	 *         Usually {@link System#nanoTime()}
+	 */
+	public long start(Class<? extends Entity> clazz, Operation operation);
+
+	/**
+	 * called after an operation was executed, regardless if it succeeded or not
+	 *
+	 * @param clazz
+	 *            entity class the operation was executed for
+	 * @param operation
+	 *            executed operation
+	 * @param start
+	 *            value returned by {@link #start(Class, Operation)} before the operation was executed
+	 */
+	public void stop(Class<? extends Entity> clazz, Operation operation, long start);
+
+	/**
+	 * called with the size of the document written or read by an operation. Sizes are only known for documents in
+	 * binary form, which is the case for documents written to or read from MongoDB
+	 *
+	 * @param clazz
+	 *            entity class of the document
+	 * @param operation
+	 *            operation which wrote or read the document
+	 * @param bytes
+	 *            size of the document in bytes
+	 */
+	public void size(Class<? extends Entity> clazz, Operation operation, long bytes);
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.cherimojava.data.mongo.entity.Entity;
+import com.google.common.collect.Maps;
+
+/**
+ * Diagnostic instrumentation detecting N+1 access patterns, like iterating over a list of lazy references which loads
+ * each referenced entity with a query of its own. Within a {@link Scope} each query loading entities of an entity
+ * class (load by id, lazy load and resolution of eager references) is counted before it's executed. Once an entity
+ * class is loaded more often than the threshold within a scope, this is reported once per entity class and scope,
+ * with the stack of the access site exceeding the threshold. Operations outside of scopes aren't tracked. Scopes are bound to the current thread, a
+ * scope opened while another one is open joins the outer scope.
+ *
+ * <pre>
+ * LazyLoadDetector detector = new LazyLoadDetector(10, Reaction.LOG, factory.getInstrumentation());
+ * factory.setInstrumentation(detector);
+ * try (LazyLoadDetector.Scope scope = detector.open("render orders")) {
+ * 	// work with entities
+ * }
+ * </pre>
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class LazyLoadDetector implements Instrumentation {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LazyLoadDetector.class);
+
+	/**
+	 * operations which query entities of an entity class
+	 */
+	private static final Set<Operation> QUERIES = EnumSet.of(Operation.LOAD, Operation.LAZY_LOAD,
+			Operation.RESOLVE_REFERENCES);
+
+	/**
+	 * what happens once the threshold is exceeded
+	 */
+	public enum Reaction {
+		/**
+		 * log a warning along with the stack of the access site
+		 */
+		LOG,
+		/**
+		 * fail the access with an IllegalStateException, the query exceeding the threshold isn't executed
+		 */
+		FAIL
+	}
+
+	private final ThreadLocal<Scope> current = new ThreadLocal<>();
+
+	private final int threshold;
+
+	private final Reaction reaction;
+
+	private final Instrumentation delegate;
+
+	/**
+	 * creates a new detector, which doesn't pass the operations on to any other instrumentation
+	 *
+	 * @param threshold
+	 *            number of queries per entity class allowed within a scope
+	 * @param reaction
+	 *            what happens once the threshold is exceeded
+	 */
+	public LazyLoadDetector(int threshold, Reaction reaction) {
+		this(threshold, reaction, Instrumentation.NONE);
+	}
+
+	/**
+	 * creates a new detector passing all operations on to the given instrumentation, so that detection can be combined
+	 * with e.g. {@link EntityMetrics}
+	 *
+	 * @param threshold
+	 *            number of queries per entity class allowed within a scope
+	 * @param reaction
+	 *            what happens once the threshold is exceeded
+	 * @param delegate
+	 *            instrumentation receiving all operations as well
+	 */
+	public LazyLoadDetector(int threshold, Reaction reaction, Instrumentation delegate) {
+		checkArgument(threshold > 0, "Threshold must be positive, but was %s", threshold);
+		this.threshold = threshold;
+		this.reaction = checkNotNull(reaction);
+		this.delegate = checkNotNull(delegate);
+	}
+
+	/**
+	 * opens a new scope for the current thread, or joins the scope already open
+	 *
+	 * @param name
+	 *            name of the scope, used when reporting exceeded thresholds
+	 * @return scope of the current thread, which needs to be closed once the scope ends
+	 */
+	public Scope open(String name) {
+		Scope scope = current.get();
+		if (scope == null) {
+			scope = new Scope(name);
+			current.set(scope);
+		}
+		scope.depth++;
+		return scope;
+	}
+
+	/**
+	 * returns the scope open for the current thread
+	 *
+	 * @return scope of the current thread or null if there's no open scope
+	 */
+	public Scope current() {
+		return current.get();
+	}
+
+	@Override
+	public long start(Class<? extends Entity> clazz, Operation operation) {
+		if (QUERIES.contains(operation)) {
+			Scope scope = current.get();
+			if (scope != null) {
+				scope.record(clazz, operation);
+			}
+		}
+		return delegate.start(clazz, operation);
+	}
+
+	@Override
+	public void stop(Class<? extends Entity> clazz, Operation operation, long start) {
+		delegate.stop(clazz, operation, start);
+	}
+
+	@Override
+	public void size(Class<? extends Entity> clazz, Operation operation, long bytes) {
+		delegate.size(clazz, operation, bytes);
+	}
+
+	/**
+	 * Unit of work within which the queries per entity class are counted
+	 */
+	public final class Scope implements AutoCloseable {
+
+		private final String name;
+
+		/**
+		 * number of times this scope was opened and not yet closed
+		 */
+		private int depth = 0;
+
+		private final Map<Class<? extends Entity>, Integer> counts = Maps.newHashMap();
+
+		private Scope(String name) {
+			this.name = name;
+		}
+
+		private void record(Class<? extends Entity> clazz, Operation operation) {
+			Integer count = counts.get(clazz);
+			count = count == null ? 1 : count + 1;
+			counts.put(clazz, count);
+			if (count == threshold + 1) {
+				// report only once per entity class, the stack of this exception is the access site
+				IllegalStateException storm = new IllegalStateException(String.format(
+						"Entity class %s was loaded %d times within scope '%s' (last through %s), exceeding the "
+								+ "threshold of %d. This is likely an N+1 access pattern", clazz.getName(), count,
+						name, operation, threshold));
+				if (reaction == Reaction.FAIL) {
+					throw storm;
+				}
+				LOG.warn(storm.getMessage(), storm);
+			}
+		}
+
+		/**
+		 * returns how often entities of the given class were loaded within this scope so far
+		 */
+		public int getCount(Class<? extends Entity> clazz) {
+			Integer count = counts.get(clazz);
+			return count == null ? 0 : count;
+		}
+
+		/**
+		 * returns the name of this scope
+		 */
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void close() {
+			checkState(depth > 0, "Scope %s was already closed", name);
+			if (--depth == 0) {
+				current.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+/**
+ * Operations on entities reported to an {@link Instrumentation}
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public enum Operation {
+	/**
+	 * saving a single entity, including validation, encoding and the write itself
+	 */
+	SAVE,
+	/**
+	 * insert of a single entity while saving
+	 */
+	INSERT,
+	/**
+	 * update or upsert of a single entity while saving
+	 */
+	UPDATE,
+	/**
+	 * bulk write of a batch of entities of the same class
+	 */
+	BULK_WRITE,
+	/**
+	 * loading entities by id
+	 */
+	LOAD,
+	/**
+	 * loading a lazy entity once it's accessed
+	 */
+	LAZY_LOAD,
+	/**
+	 * removing an entity from MongoDB
+	 */
+	DROP,
+	/**
+	 * loading the entities of an entity class eagerly referenced by decoded entities
+	 */
+	RESOLVE_REFERENCES,
+	/**
+	 * encoding an entity into a document
+	 */
+	ENCODE,
+	/**
+	 * decoding an entity from a document
+	 */
+	DECODE,
+	/**
+	 * validating property values of an entity
+	 */
+	VALIDATE
+}
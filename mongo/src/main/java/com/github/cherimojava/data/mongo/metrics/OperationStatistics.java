@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the statistics recorded for one operation on one entity class. Times are given in microseconds, sizes in
+ * bytes. Percentiles are accurate up to a factor of two.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public final class OperationStatistics {
+
+	private final String entityClass;
+	private final String operation;
+	private final long count;
+	private final long totalMicros;
+	private final long p50Micros;
+	private final long p99Micros;
+	private final long p999Micros;
+	private final long maxMicros;
+	private final long documents;
+	private final long p50Size;
+	private final long p99Size;
+	private final long maxSize;
+
+	@ConstructorProperties({ "entityClass", "operation", "count", "totalMicros", "p50Micros", "p99Micros",
+			"p999Micros", "maxMicros", "documents", "p50Size", "p99Size", "maxSize" })
+	public OperationStatistics(String entityClass, String operation, long count, long totalMicros, long p50Micros,
+			long p99Micros, long p999Micros, long maxMicros, long documents, long p50Size, long p99Size, long maxSize) {
+		this.entityClass = entityClass;
+		this.operation = operation;
+		this.count = count;
+		this.totalMicros = totalMicros;
+		this.p50Micros = p50Micros;
+		this.p99Micros = p99Micros;
+		this.p999Micros = p999Micros;
+		this.maxMicros = maxMicros;
+		this.documents = documents;
+		this.p50Size = p50Size;
+		this.p99Size = p99Size;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * name of the entity class the operation was executed for
+	 */
+	public String getEntityClass() {
+		return entityClass;
+	}
+
+	/**
+	 * name of the executed {@link Operation}
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * number of times the operation was executed
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * time spent in total executing the operation
+	 */
+	public long getTotalMicros() {
+		return totalMicros;
+	}
+
+	public long getP50Micros() {
+		return p50Micros;
+	}
+
+	public long getP99Micros() {
+		return p99Micros;
+	}
+
+	public long getP999Micros() {
+		return p999Micros;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+
+	/**
+	 * number of documents whose size was recorded for the operation
+	 */
+	public long getDocuments() {
+		return documents;
+	}
+
+	public long getP50Size() {
+		return p50Size;
+	}
+
+	public long getP99Size() {
+		return p99Size;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s: count=%d, total=%dus, p50=%dus, p99=%dus, p999=%dus, max=%dus, documents=%d, "
+				+ "p50Size=%d, p99Size=%d, maxSize=%d", entityClass, operation, count, totalMicros, p50Micros,
+				p99Micros, p999Micros, maxMicros, documents, p50Size, p99Size, maxSize);
+	}
+}
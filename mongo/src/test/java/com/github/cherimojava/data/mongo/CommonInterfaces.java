@@ -59,6 +59,28 @@ public class CommonInterfaces {
 		public int getInt();
 	}
 
+	/**
+	 * interface with all primitive types being stored unboxed
+	 */
+	public static interface NumericEntity extends Entity<NumericEntity> {
+
+		public NumericEntity setCount(int count);
+
+		public int getCount();
+
+		public NumericEntity setTimestamp(long timestamp);
+
+		public long getTimestamp();
+
+		public NumericEntity setValue(double value);
+
+		public double getValue();
+
+		public NumericEntity setValid(boolean valid);
+
+		public boolean getValid();
+	}
+
 	/**
 	 * containing primitive and Entity properties
 	 */
@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo;
+
+import static com.github.cherimojava.data.mongo.entity.Entity.ID;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.github.cherimojava.data.mongo.CommonInterfaces.LazyLoadingEntity;
+import com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * End-to-end load test running a mix of entity operations from concurrent threads against the MongoDB instance used by
+ * the test suite. Reports throughput and latency percentiles per operation. This is not part of the test suite and
+ * must be started explicitly, e.g.:
+ *
+ * <pre>
+ * mvn exec:java -pl mongo -Dexec.mainClass=com.github.cherimojava.data.mongo.LoadTest \
+ *     -Dexec.classpathScope=test -Dexec.args="8 30 1000"
+ * </pre>
+ *
+ * Arguments are (all optional): number of threads (default 4), duration in seconds (default 30), number of entities
+ * seeded before the run (default 1000).
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public class LoadTest {
+
+	/**
+	 * operations executed by the load test along with their share of the overall mix in percent
+	 */
+	enum Operation {
+		CREATE(20), LOAD(40), LAZY_REFERENCE(20), JSON(20);
+
+		private final int share;
+
+		Operation(int share) {
+			this.share = share;
+		}
+
+		/**
+		 * picks an operation according to the configured mix
+		 */
+		static Operation pick(int percent) {
+			int bound = 0;
+			for (Operation op : values()) {
+				bound += op.share;
+				if (percent < bound) {
+					return op;
+				}
+			}
+			return LOAD;
+		}
+	}
+
+	/**
+	 * highest latency recorded, anything above will be capped, in microseconds
+	 */
+	private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+	private final EntityFactory factory;
+
+	private final List<Object> primitiveIds = Lists.newArrayList();
+
+	private final List<Object> lazyIds = Lists.newArrayList();
+
+	private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+
+	private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+
+	/**
+	 * first exception thrown by each operation, the others are only counted
+	 */
+	private final Map<Operation, AtomicReference<RuntimeException>> firstErrors = new EnumMap<>(Operation.class);
+
+	private volatile boolean running = true;
+
+	public LoadTest(MongoDatabase db) {
+		factory = new EntityFactory(db);
+		for (Operation op : Operation.values()) {
+			recorders.put(op, new Recorder(HIGHEST_LATENCY, 3));
+			errors.put(op, new AtomicLong());
+			firstErrors.put(op, new AtomicReference<RuntimeException>());
+		}
+	}
+
+	/**
+	 * stores the given number of entities, which are later on loaded and referenced by the load test
+	 */
+	void seed(int count) {
+		for (int i = 0; i < count; i++) {
+			PrimitiveEntity pe = newPrimitive(i);
+			pe.save();
+			primitiveIds.add(pe.get(ID));
+			LazyLoadingEntity lazy = factory.create(LazyLoadingEntity.class);
+			lazy.setString("lazy" + i);
+			lazy.setPE(pe);
+			lazy.save();
+			lazyIds.add(lazy.get(ID));
+		}
+	}
+
+	private PrimitiveEntity newPrimitive(int i) {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+		pe.setString("load" + i);
+		pe.setInteger(i);
+		return pe;
+	}
+
+	/**
+	 * runs the given operation once
+	 */
+	void execute(Operation op, ThreadLocalRandom random) {
+		switch (op) {
+		case CREATE:
+			newPrimitive(random.nextInt()).save();
+			break;
+		case LOAD:
+			factory.load(PrimitiveEntity.class, primitiveIds.get(random.nextInt(primitiveIds.size()))).getString();
+			break;
+		case LAZY_REFERENCE:
+			factory.load(LazyLoadingEntity.class, lazyIds.get(random.nextInt(lazyIds.size()))).getPE().getString();
+			break;
+		case JSON:
+			PrimitiveEntity pe = factory.load(PrimitiveEntity.class,
+					primitiveIds.get(random.nextInt(primitiveIds.size())));
+			factory.readEntity(PrimitiveEntity.class, pe.toString());
+			break;
+		}
+	}
+
+	/**
+	 * executes operations from the given number of threads for the given time and prints the results afterwards
+	 */
+	void run(int threads, long seconds) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					try {
+						while (running) {
+							Operation op = Operation.pick(random.nextInt(100));
+							long start = System.nanoTime();
+							try {
+								execute(op, random);
+							} catch (RuntimeException e) {
+								errors.get(op).incrementAndGet();
+								firstErrors.get(op).compareAndSet(null, e);
+								continue;
+							}
+							long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+							recorders.get(op).recordValue(Math.min(micros, HIGHEST_LATENCY));
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+		running = false;
+		done.await();
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+		report(threads, elapsed);
+	}
+
+	private void report(int threads, long elapsedNanos) {
+		double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		long totalErrors = 0;
+		for (AtomicLong count : errors.values()) {
+			totalErrors += count.get();
+		}
+		System.out.println(String.format("%d threads, %.1f s, %d errors", threads, seconds, totalErrors));
+		System.out.println(String.format("%-15s %10s %10s %10s %10s %10s %10s %10s", "operation", "count", "ops/s",
+				"p50 [us]", "p99 [us]", "p999 [us]", "max [us]", "errors"));
+		Histogram total = new Histogram(HIGHEST_LATENCY, 3);
+		for (Operation op : Operation.values()) {
+			Histogram histogram = recorders.get(op).getIntervalHistogram();
+			total.add(histogram);
+			print(op.name(), histogram, seconds, errors.get(op).get());
+		}
+		print("TOTAL", total, seconds, totalErrors);
+		for (Operation op : Operation.values()) {
+			RuntimeException error = firstErrors.get(op).get();
+			if (error != null) {
+				System.out.println(String.format("first of %d errors of %s:", errors.get(op).get(), op.name()));
+				error.printStackTrace(System.out);
+			}
+		}
+	}
+
+	private static void print(String name, Histogram histogram, double seconds, long errors) {
+		System.out.println(String.format("%-15s %10d %10.0f %10d %10d %10d %10d %10d", name,
+				histogram.getTotalCount(), histogram.getTotalCount() / seconds, histogram.getValueAtPercentile(50),
+				histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMaxValue(),
+				errors));
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+		int seed = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+		Suite.startMongo();
+		MongoClient client = new MongoClient(new ServerAddress("localhost", Suite.getPort()));
+		MongoDatabase db = client.getDatabase(LoadTest.class.getSimpleName());
+		try {
+			db.drop();
+			LoadTest test = new LoadTest(db);
+			test.seed(seed);
+			test.run(threads, seconds);
+		} catch (Exception e) {
+			throw Throwables.propagate(e);
+		} finally {
+			db.drop();
+			client.close();
+			Suite.stopMongo();
+		}
+	}
+}
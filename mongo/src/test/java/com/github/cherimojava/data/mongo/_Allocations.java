@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo;
+
+import static com.github.cherimojava.data.mongo.CommonInterfaces.NumericEntity;
+import static com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import static com.github.cherimojava.data.mongo.entity.EntityFactory.instantiate;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.entity.Entity;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+import com.github.cherimojava.data.mongo.io.EntityCodec;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Verifies that the hot paths of encoding, decoding and property access stay within a recorded allocation budget.
+ * MongoDB is only needed as decoding entities links them to their collection.
+ * Allocations are measured through the per thread allocation counter of the JVM, tests are skipped if the JVM doesn't
+ * offer it. Budgets are bytes per operation and have some headroom over the measured values, if a change makes a test
+ * fail, check for new per call allocations before raising the budget.
+ *
+ * @author philnate
+ * @since 1.0.0
+ */
+public class _Allocations extends MongoBase {
+
+	private static final int WARMUP = 20000;
+
+	private static final int ITERATIONS = 10000;
+
+	private static final int ROUNDS = 5;
+
+	private static ThreadMXBean threads;
+
+	private EntityFactory factory;
+
+	private final EncoderContext encoderContext = EncoderContext.builder().build();
+
+	private final DecoderContext decoderContext = DecoderContext.builder().build();
+
+	private EntityCodec<PrimitiveEntity> codec;
+
+	private EntityCodec<NumericEntity> numericCodec;
+
+	private PrimitiveEntity pe;
+
+	private NumericEntity ne;
+
+	@BeforeClass
+	public static void allocationCounter() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof ThreadMXBean);
+		threads = (ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db);
+		codec = factory.getCodec(PrimitiveEntity.class);
+		numericCodec = factory.getCodec(NumericEntity.class);
+		pe = instantiate(PrimitiveEntity.class);
+		pe.setString("value");
+		pe.setInteger(123);
+		ne = instantiate(NumericEntity.class);
+		ne.setCount(3).setTimestamp(1234567890L).setValue(1.5).setValid(true);
+	}
+
+	@Test
+	public void encode() {
+		final BasicOutputBuffer buffer = new BasicOutputBuffer();
+		assertBudget("encode", 1000, new Runnable() {
+			@Override
+			public void run() {
+				buffer.truncateToPosition(0);
+				codec.encode(new BsonBinaryWriter(buffer), pe, encoderContext);
+			}
+		});
+	}
+
+	@Test
+	public void encodePrimitives() {
+		final BasicOutputBuffer buffer = new BasicOutputBuffer();
+		assertBudget("encodePrimitives", 1000, new Runnable() {
+			@Override
+			public void run() {
+				buffer.truncateToPosition(0);
+				numericCodec.encode(new BsonBinaryWriter(buffer), ne, encoderContext);
+			}
+		});
+	}
+
+	@Test
+	public void decode() {
+		final byte[] bytes = encode(codec, pe);
+		assertBudget("decode", 1600, new Runnable() {
+			@Override
+			public void run() {
+				codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), decoderContext);
+			}
+		});
+	}
+
+	@Test
+	public void decodePrimitives() {
+		final byte[] bytes = encode(numericCodec, ne);
+		assertBudget("decodePrimitives", 2000, new Runnable() {
+			@Override
+			public void run() {
+				numericCodec.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), decoderContext);
+			}
+		});
+	}
+
+	@Test
+	public void getAndSet() {
+		assertBudget("getAndSet", 300, new Runnable() {
+			@Override
+			public void run() {
+				pe.setString(pe.getString());
+				pe.set("Integer", pe.get("Integer"));
+			}
+		});
+	}
+
+	@Test
+	public void getAndSetPrimitives() {
+		assertBudget("getAndSetPrimitives", 100, new Runnable() {
+			@Override
+			public void run() {
+				ne.setCount(ne.getCount());
+				ne.setValid(!ne.getValid());
+			}
+		});
+	}
+
+	@Test
+	public void readEntity() {
+		final String json = pe.toString();
+		assertBudget("readEntity", 2000, new Runnable() {
+			@Override
+			public void run() {
+				factory.readEntity(PrimitiveEntity.class, json);
+			}
+		});
+	}
+
+	private <T extends Entity> byte[] encode(EntityCodec<T> codec, T entity) {
+		BasicOutputBuffer buffer = new BasicOutputBuffer();
+		codec.encode(new BsonBinaryWriter(buffer), entity, encoderContext);
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * runs the given operation until warmed up and asserts that the lowest number of bytes allocated per operation
+	 * over some rounds doesn't exceed the given budget
+	 */
+	private void assertBudget(String operation, long budget, Runnable op) {
+		for (int i = 0; i < WARMUP; i++) {
+			op.run();
+		}
+		long id = Thread.currentThread().getId();
+		long lowest = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = threads.getThreadAllocatedBytes(id);
+			for (int i = 0; i < ITERATIONS; i++) {
+				op.run();
+			}
+			lowest = Math.min(lowest, (threads.getThreadAllocatedBytes(id) - before) / ITERATIONS);
+		}
+		assertTrue(String.format("%s allocated %d bytes per operation, budget is %d", operation, lowest, budget),
+				lowest <= budget);
+	}
+}
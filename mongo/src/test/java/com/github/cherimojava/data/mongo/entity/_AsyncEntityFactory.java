@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.github.cherimojava.data.mongo.entity.Entity.ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.validation.ConstraintViolationException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import com.github.cherimojava.data.mongo.MongoBase;
+import com.google.common.collect.Lists;
+
+public class _AsyncEntityFactory extends MongoBase {
+
+	EntityFactory factory;
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db);
+	}
+
+	@Test
+	public void asyncIsShared() {
+		assertSame(factory.async(), factory.async());
+		assertSame(factory, factory.async().getFactory());
+	}
+
+	@Test
+	public void saveLoadDrop() throws Exception {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("async");
+		assertTrue(factory.async().save(pe).get());
+
+		PrimitiveEntity loaded = factory.async().load(PrimitiveEntity.class, pe.get(ID)).get();
+		assertEquals(pe, loaded);
+
+		factory.async().drop(loaded).get();
+		assertNull(factory.async().load(PrimitiveEntity.class, pe.get(ID)).get());
+	}
+
+	@Test
+	public void fanOut() throws Exception {
+		List<PrimitiveEntity> entities = Lists.newArrayList();
+		for (int i = 0; i < 10; i++) {
+			entities.add(factory.create(PrimitiveEntity.class).setString("fan" + i));
+		}
+		assertEquals(10, factory.async().saveAll(entities).get().getCount(SaveResult.Outcome.SAVED));
+
+		List<CompletableFuture<PrimitiveEntity>> futures = Lists.newArrayList();
+		for (PrimitiveEntity pe : entities) {
+			futures.add(factory.async().load(PrimitiveEntity.class, pe.get(ID)));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+		for (int i = 0; i < 10; i++) {
+			assertEquals("fan" + i, futures.get(i).get().getString());
+		}
+
+		Map<Object, PrimitiveEntity> all = factory.async().loadAll(PrimitiveEntity.class,
+				Lists.newArrayList(entities.get(0).get(ID), entities.get(1).get(ID))).get();
+		assertEquals("fan1", all.get(entities.get(1).get(ID)).getString());
+	}
+
+	@Test
+	public void queries() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("query");
+			pe.setInteger(i);
+			pe.save();
+		}
+		AsyncEntityFactory async = factory.async();
+		assertEquals(3, async.list(factory.query(PrimitiveEntity.class).eq("string", "query")).get().size());
+		assertEquals(Integer.valueOf(2), async.first(
+				factory.query(PrimitiveEntity.class).descending("Integer")).get().getInteger());
+		assertEquals(Long.valueOf(3), async.count(factory.query(PrimitiveEntity.class)).get());
+	}
+
+	@Test
+	public void failuresCompleteExceptionally() throws Exception {
+		// string is required on save
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+		pe.setInteger(1);
+		try {
+			factory.async().save(pe).get();
+			fail("should throw an exception");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ConstraintViolationException);
+		}
+	}
+
+	@Test
+	public void customExecutor() throws Exception {
+		final AtomicReference<Thread> thread = new AtomicReference<>();
+		AsyncEntityFactory async = factory.async(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				thread.set(Thread.currentThread());
+				command.run();
+			}
+		});
+		assertNull(async.load(PrimitiveEntity.class, "unknown").get());
+		assertSame(Thread.currentThread(), thread.get());
+		assertNotEquals(factory.async(), async);
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.github.cherimojava.data.mongo.entity.Entity.ID;
+import static com.github.cherimojava.data.mongo.entity.EntityUtils.getCollectionName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import com.github.cherimojava.data.mongo.MongoBase;
+import com.github.cherimojava.data.mongo.entity.annotation.Cached;
+import com.github.cherimojava.data.mongo.entity.annotation.Id;
+import com.github.cherimojava.data.mongo.entity.annotation.Reference;
+
+public class _EntityCache extends MongoBase {
+
+	EntityFactory factory;
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db);
+	}
+
+	@Test
+	public void onlyCachedClasses() {
+		assertNull(factory.getCache(PrimitiveEntity.class));
+		assertNotNull(factory.getCache(Country.class));
+		assertNotSame(factory.getCache(Country.class), new EntityFactory(db).getCache(Country.class));
+	}
+
+	@Test
+	public void loadReadsThrough() {
+		factory.create(Country.class).setCode("de").setName("Germany").save();
+		EntityCache cache = factory.getCache(Country.class);
+
+		Country first = factory.load(Country.class, "de");
+		assertEquals("Germany", first.getName());
+		assertEquals(1, cache.stats().missCount());
+		// cached entities don't need a round trip anymore
+		removeAll(Country.class);
+		Country second = factory.load(Country.class, "de");
+		assertEquals("Germany", second.getName());
+		assertNotSame(first, second);
+		assertEquals(1, cache.stats().hitCount());
+		// modifications of loaded entities aren't leaking into the cache
+		second.setName("Deutschland");
+		assertEquals("Germany", factory.load(Country.class, "de").getName());
+		assertNull(factory.load(Country.class, "fr"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void saveInvalidates() {
+		factory.create(Country.class).setCode("de").setName("Germany").save();
+		Country loaded = factory.load(Country.class, "de");
+		assertEquals(1, factory.getCache(Country.class).size());
+
+		loaded.setName("Deutschland").save();
+		assertEquals(0, factory.getCache(Country.class).size());
+		assertEquals("Deutschland", factory.load(Country.class, "de").getName());
+	}
+
+	@Test
+	public void dropInvalidates() {
+		factory.create(Country.class).setCode("de").setName("Germany").save();
+		factory.load(Country.class, "de").drop();
+		assertEquals(0, factory.getCache(Country.class).size());
+		assertNull(factory.load(Country.class, "de"));
+	}
+
+	@Test
+	public void lazyReferencesReadThrough() {
+		factory.create(Country.class).setCode("de").setName("Germany").save();
+		factory.create(Address.class).setCity("Berlin").setCountry(factory.load(Country.class, "de")).save();
+		removeAll(Country.class);
+
+		Address read = factory.load(Address.class, "Berlin");
+		assertEquals("Germany", read.getCountry().getName());
+		assertEquals(1, factory.getCache(Country.class).stats().hitCount());
+	}
+
+	@Test
+	public void bounded() {
+		for (int i = 0; i < 5; i++) {
+			factory.create(Tiny.class).setName("tiny" + i).save();
+			factory.load(Tiny.class, "tiny" + i);
+		}
+		EntityCache cache = factory.getCache(Tiny.class);
+		assertTrue(cache.size() <= 2);
+		assertTrue(cache.stats().evictionCount() >= 3);
+	}
+
+	@Test
+	public void expires() throws InterruptedException {
+		factory.create(Expiring.class).setName("expiring").save();
+		factory.load(Expiring.class, "expiring");
+		Thread.sleep(20);
+		removeAll(Expiring.class);
+		assertNull(factory.load(Expiring.class, "expiring"));
+	}
+
+	private void removeAll(Class<? extends Entity> clazz) {
+		db.getCollection(getCollectionName(clazz)).deleteMany(new Document());
+	}
+
+	@Cached
+	private static interface Country extends Entity<Country> {
+		@Id
+		public String getCode();
+
+		public Country setCode(String code);
+
+		public String getName();
+
+		public Country setName(String name);
+	}
+
+	private static interface Address extends Entity<Address> {
+		@Id
+		public String getCity();
+
+		public Address setCity(String city);
+
+		@Reference
+		public Country getCountry();
+
+		public Address setCountry(Country country);
+	}
+
+	@Cached(maximumSize = 2)
+	private static interface Tiny extends Entity<Tiny> {
+		@Id
+		public String getName();
+
+		public Tiny setName(String name);
+	}
+
+	@Cached(expireAfterWrite = 10, unit = TimeUnit.MILLISECONDS)
+	private static interface Expiring extends Entity<Expiring> {
+		@Id
+		public String getName();
+
+		public Expiring setName(String name);
+	}
+}
@@ -17,15 +17,25 @@ package com.github.cherimojava.data.mongo.entity;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.validation.ConstraintViolationException;
+
+import org.bson.BsonDocument;
 import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.junit.Before;
@@ -35,7 +45,15 @@ import org.mockito.MockitoAnnotations;
 
 import com.github.cherimojava.data.mongo.CommonInterfaces;
 import com.github.cherimojava.data.mongo.TestBase;
+import com.github.cherimojava.data.mongo.io.EntityCodec;
+import com.github.cherimojava.data.mongo.io.EntityCodecProvider;
+import com.google.common.collect.Lists;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.MongoDatabase;
 
 public class _EntityFactory extends TestBase {
@@ -57,6 +75,68 @@ public class _EntityFactory extends TestBase {
 		factory = new EntityFactory(db);
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void saveAllGroupsByClass() {
+		List<Entity> entities = Lists.newArrayList();
+		for (int i = 0; i < 3; i++) {
+			entities.add(factory.create(CommonInterfaces.PrimitiveEntity.class).setString("s" + i));
+		}
+		CommonInterfaces.NestedEntity nested = factory.create(CommonInterfaces.NestedEntity.class);
+		nested.setString("nested");
+		entities.add(nested);
+		CommonInterfaces.PrimitiveEntity unchanged = factory.create(CommonInterfaces.PrimitiveEntity.class);
+		unchanged.setString("unchanged");
+		EntityUtils.persist(unchanged);
+		entities.add(unchanged);// nothing to save
+
+		SaveResult result = factory.saveAll(entities);
+		verify(coll, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+		assertEquals(4, result.getCount(SaveResult.Outcome.SAVED));
+		assertEquals(SaveResult.Outcome.UNCHANGED, result.getOutcome(4));
+		assertTrue(result.isSuccessful());
+		assertTrue(EntityUtils.isPersisted(entities.get(0)));
+	}
+
+	@Test
+	public void saveAllValidatesUpfront() {
+		List<Entity> entities = Lists.newArrayList();
+		entities.add(factory.create(CommonInterfaces.PrimitiveEntity.class).setString("valid"));
+		entities.add(factory.create(CommonInterfaces.PrimitiveEntity.class).setInteger(1));// string must not be null
+		try {
+			factory.saveAll(entities);
+			fail("should throw an exception");
+		} catch (ConstraintViolationException e) {
+			verify(coll, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void saveAllReportsErrors() {
+		List<Entity> entities = Lists.newArrayList();
+		for (int i = 0; i < 4; i++) {
+			entities.add(factory.create(CommonInterfaces.PrimitiveEntity.class).setString("s" + i));
+		}
+		BulkWriteError error = new BulkWriteError(11000, "duplicate", new BsonDocument(), 1);
+		when(coll.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenThrow(
+				new MongoBulkWriteException(BulkWriteResult.unacknowledged(), Lists.newArrayList(error), null,
+						new ServerAddress()));
+
+		SaveResult ordered = factory.saveAll(entities, true);
+		assertEquals(SaveResult.Outcome.SAVED, ordered.getOutcome(0));
+		assertEquals(SaveResult.Outcome.FAILED, ordered.getOutcome(1));
+		assertEquals(error, ordered.getError(1));
+		assertEquals(SaveResult.Outcome.NOT_EXECUTED, ordered.getOutcome(2));
+		assertEquals(SaveResult.Outcome.NOT_EXECUTED, ordered.getOutcome(3));
+		assertFalse(ordered.isSuccessful());
+
+		SaveResult unordered = factory.saveAll(entities.subList(1, 4), false);
+		assertEquals(SaveResult.Outcome.SAVED, unordered.getOutcome(0));
+		assertEquals(SaveResult.Outcome.FAILED, unordered.getOutcome(1));
+		assertEquals(SaveResult.Outcome.SAVED, unordered.getOutcome(2));
+	}
+
 	@Test
 	public void defaultClassesOnlyForInterfaces() {
 		factory.setDefaultClass(List.class, ArrayList.class);
@@ -117,6 +197,34 @@ public class _EntityFactory extends TestBase {
 		assertEquals((int) list.get(1).getInteger(), 2);
 	}
 
+	@Test
+	public void instancesShareGeneratedClass() {
+		assertSame(EntityFactory.instantiate(CommonInterfaces.PrimitiveEntity.class).getClass(),
+				factory.create(CommonInterfaces.PrimitiveEntity.class).getClass());
+	}
+
+	@Test
+	public void codecsAreShared() {
+		EntityCodec<CommonInterfaces.PrimitiveEntity> codec = factory.getCodec(CommonInterfaces.PrimitiveEntity.class);
+		assertSame(codec, factory.getCodec(CommonInterfaces.PrimitiveEntity.class));
+		assertSame(factory.getCodecRegistry(CommonInterfaces.PrimitiveEntity.class),
+				factory.getCodecRegistry(CommonInterfaces.PrimitiveEntity.class));
+		// nested entities are de/encoded through the same codec
+		assertSame(codec, factory.getCodecRegistry(CommonInterfaces.NestedEntity.class).get(
+				CommonInterfaces.PrimitiveEntity.class));
+		assertSame(codec, factory.getCodecRegistry(CommonInterfaces.PrimitiveEntity.class).get(
+				factory.create(CommonInterfaces.PrimitiveEntity.class).getClass()));
+	}
+
+	@Test
+	public void factoryIsSharedPerDatabase() {
+		EntityFactory shared = EntityFactory.forDatabase(db);
+		assertSame(shared, EntityFactory.forDatabase(db));
+		assertSame(EntityFactory.forDatabase(null), EntityFactory.forDatabase(null));
+		assertSame(shared.getCodecRegistry(CommonInterfaces.PrimitiveEntity.class),
+				EntityCodecProvider.createCodecRegistry(db, CommonInterfaces.PrimitiveEntity.class));
+	}
+
 	private class NoPubList extends ArrayList {
 		public NoPubList(int i) {
 			super(i);
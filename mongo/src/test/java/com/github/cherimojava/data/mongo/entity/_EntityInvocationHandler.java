@@ -19,6 +19,7 @@ import static com.github.cherimojava.data.mongo.CommonInterfaces.AddEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.ComputedPropertyEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.ExplicitIdEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.NestedEntity;
+import static com.github.cherimojava.data.mongo.CommonInterfaces.NumericEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.ReferencingEntity;
 import static com.github.cherimojava.data.mongo.entity.EntityFactory.instantiate;
@@ -27,6 +28,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -87,11 +89,32 @@ public class _EntityInvocationHandler extends TestBase {
 		String v = "value";
 		pe.setString(v).setInteger(1);
 		// verify set value
-		assertEquals(v, handler.data.get("string"));// direct
+		assertEquals(v, handler.data[handler.getProperties().getProperty("string").getOrdinal()]);// direct
 		assertEquals(v, pe.get("string"));// generic access from Entity
 		assertEquals(v, pe.getString());// through getter
 	}
 
+	@Test
+	public void primitiveStorage() {
+		EntityInvocationHandler nhandler = new EntityInvocationHandler(
+				new EntityPropertyFactory().create(NumericEntity.class));
+		NumericEntity ne = instantiate(NumericEntity.class, nhandler);
+		ParameterProperty count = nhandler.getProperties().getProperty("count");
+		assertTrue(count.isPrimitive());
+		assertNull(ne.get("count"));
+
+		ne.setCount(5).setValue(2.5);
+		assertEquals(5, nhandler.primitives[count.getOrdinal()]);// direct, unboxed
+		assertFalse(nhandler.data[count.getOrdinal()] instanceof Integer);
+		assertEquals(5, ne.getCount());
+		assertEquals(2.5, ne.getValue(), 0);
+		assertTrue(nhandler.hasPrimitive(count));
+
+		ne.set("count", null);
+		assertFalse(nhandler.hasPrimitive(count));
+		assertNull(ne.get("count"));
+	}
+
 	@Test
 	public void correctNameResolving() {
 		Integer one = 1;
@@ -335,6 +358,17 @@ public class _EntityInvocationHandler extends TestBase {
 		assertNotEquals(pe1.hashCode(), pe2.hashCode());
 	}
 
+	@Test
+	public void equalsIgnoresClearedPrimitives() {
+		NumericEntity ne1 = factory.create(NumericEntity.class);
+		NumericEntity ne2 = factory.create(NumericEntity.class);
+		ne1.setCount(5).setValue(2.5);
+		ne1.set("count", null);
+		ne1.set("value", null);
+		assertTrue(ne1.equals(ne2));
+		assertEquals(ne1.hashCode(), ne2.hashCode());
+	}
+
 	@Test
 	public void computedProperty() {
 		ComputedPropertyEntity cpe = factory.create(ComputedPropertyEntity.class);
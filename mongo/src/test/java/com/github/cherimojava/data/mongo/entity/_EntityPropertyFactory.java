@@ -21,6 +21,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.github.cherimojava.data.mongo.TestBase;
+import com.github.cherimojava.data.mongo.entity.annotation.Collection;
 
 import static com.github.cherimojava.data.mongo.CommonInterfaces.*;
 import static org.hamcrest.CoreMatchers.containsString;
@@ -40,6 +41,34 @@ public class _EntityPropertyFactory extends TestBase {
 		assertTrue(factory.create(PrimitiveEntity.class) == factory.create(PrimitiveEntity.class));
 	}
 
+	@Test
+	public void methodsResolved() throws NoSuchMethodException {
+		EntityProperties props = factory.create(PrimitiveEntity.class);
+		EntityMethod setter = props.getMethod(PrimitiveEntity.class.getMethod("setString", String.class));
+		assertEquals(EntityMethod.Action.SET, setter.getAction());
+		assertTrue(setter.isFluent());
+		assertEquals("string", setter.getProperty().getMongoName());
+		assertEquals(EntityMethod.Action.GET, props.getMethod(PrimitiveEntity.class.getMethod("getInteger")).getAction());
+		assertEquals(EntityMethod.Action.EQUALS,
+				props.getMethod(Object.class.getMethod("equals", Object.class)).getAction());
+	}
+
+	@Test
+	public void propertyOrdinals() {
+		EntityProperties props = factory.create(PrimitiveEntity.class);
+		int i = 0;
+		for (ParameterProperty pp : props.getProperties()) {
+			assertEquals(i++, pp.getOrdinal());
+		}
+		assertSame(props.getIdProperty(), props.getProperties().get(props.getIdProperty().getOrdinal()));
+	}
+
+	@Test
+	public void upsert() {
+		assertTrue(factory.create(PrimitiveEntity.class).isUpsert());
+		assertFalse(factory.create(InsertOnlyEntity.class).isUpsert());
+	}
+
 	@Test
 	public void collectionName() {
 		assertEquals("primitiveEntitys", factory.create(PrimitiveEntity.class).getCollectionName());
@@ -229,6 +258,13 @@ public class _EntityPropertyFactory extends TestBase {
 		}
 	}
 
+	@Collection(upsert = false)
+	private static interface InsertOnlyEntity extends Entity {
+		public String getString();
+
+		public InsertOnlyEntity setString(String s);
+	}
+
 	private static interface InheritedEntity extends PrimitiveEntity {
 		public String getAnotherString();
 
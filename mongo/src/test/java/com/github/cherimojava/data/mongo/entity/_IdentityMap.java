@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.github.cherimojava.data.mongo.entity.Entity.ID;
+import static com.github.cherimojava.data.mongo.entity.EntityUtils.getCollectionName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import com.github.cherimojava.data.mongo.MongoBase;
+import com.github.cherimojava.data.mongo.entity.annotation.Id;
+import com.github.cherimojava.data.mongo.entity.annotation.Reference;
+import com.google.common.collect.Lists;
+
+public class _IdentityMap extends MongoBase {
+
+	EntityFactory factory;
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db, true);
+	}
+
+	@Test
+	public void disabledByDefault() {
+		EntityFactory plain = new EntityFactory(db);
+		assertNull(plain.getIdentityMap());
+		PrimitiveEntity pe = plain.create(PrimitiveEntity.class).setString("plain");
+		pe.save();
+		assertNotSame(pe, plain.load(PrimitiveEntity.class, pe.get(ID)));
+		assertNotSame(plain.load(PrimitiveEntity.class, pe.get(ID)), plain.load(PrimitiveEntity.class, pe.get(ID)));
+	}
+
+	@Test
+	public void loadReturnsSameInstance() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("same");
+		pe.save();
+		assertSame(pe, factory.load(PrimitiveEntity.class, pe.get(ID)));
+
+		factory.getIdentityMap().clear();
+		PrimitiveEntity loaded = factory.load(PrimitiveEntity.class, pe.get(ID));
+		assertNotSame(pe, loaded);
+		// already loaded entities aren't queried again
+		db.getCollection(getCollectionName(PrimitiveEntity.class)).drop();
+		assertSame(loaded, factory.load(PrimitiveEntity.class, pe.get(ID)));
+		assertSame(loaded, factory.loadAll(PrimitiveEntity.class, Lists.newArrayList(pe.get(ID))).get(pe.get(ID)));
+	}
+
+	@Test
+	public void loadKeepsModifications() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("saved");
+		pe.save();
+		pe.setString("modified");
+		// even if the entity is decoded again, the registered instance stays untouched
+		for (Entity read : factory.getCollection(PrimitiveEntity.class).find()) {
+			assertSame(pe, read);
+		}
+		assertEquals("modified", pe.getString());
+	}
+
+	@Test
+	public void lazyReferencesShared() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("referenced");
+		pe.save();
+		factory.getIdentityMap().clear();
+
+		PrimitiveEntity lazy = factory.createLazy(PrimitiveEntity.class, pe.get(ID));
+		assertSame(lazy, factory.createLazy(PrimitiveEntity.class, pe.get(ID)));
+		// loading fills the lazy entity instead of creating a new one
+		assertSame(lazy, factory.load(PrimitiveEntity.class, pe.get(ID)));
+		assertEquals("referenced", lazy.getString());
+	}
+
+	@Test
+	public void projectionMergedIntoLazyEntity() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("projected");
+		pe.setInteger(5);
+		pe.save();
+		factory.getIdentityMap().clear();
+
+		PrimitiveEntity lazy = factory.createLazy(PrimitiveEntity.class, pe.get(ID));
+		assertSame(lazy, factory.load(PrimitiveEntity.class, pe.get(ID), Projection.of("string")));
+		// entity stays partial, properties not projected are still loaded on access
+		assertTrue(EntityInvocationHandler.getHandler(lazy).isPartial());
+		assertEquals("projected", lazy.getString());
+		assertEquals(5, (int) lazy.getInteger());
+	}
+
+	@Test
+	public void projectionsMerged() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("projected");
+		pe.setInteger(5);
+		pe.save();
+		factory.getIdentityMap().clear();
+
+		PrimitiveEntity partial = factory.load(PrimitiveEntity.class, pe.get(ID), Projection.of("string").strict());
+		assertSame(partial, factory.load(PrimitiveEntity.class, pe.get(ID), Projection.of("Integer")));
+		// both projections are available now, without loading the entity completely
+		assertTrue(EntityInvocationHandler.getHandler(partial).isPartial());
+		assertEquals("projected", partial.getString());
+		assertEquals(5, (int) partial.getInteger());
+	}
+
+	@Test
+	public void referencesResolveToSameInstance() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("ref");
+		pe.save();
+		factory.create(Referencing.class).setName("lazy").setLazy(pe).setEager(pe).save();
+		factory.create(Referencing.class).setName("other").setLazy(pe).setEager(pe).save();
+
+		Map<Object, Referencing> loaded = factory.loadAll(Referencing.class, Lists.newArrayList("lazy", "other"));
+		assertSame(pe, loaded.get("lazy").getLazy());
+		assertSame(pe, loaded.get("lazy").getEager());
+		assertSame(pe, loaded.get("other").getEager());
+	}
+
+	@Test
+	public void dropRemovesEntity() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("dropped");
+		pe.save();
+		pe.drop();
+		assertNull(factory.getIdentityMap().get(PrimitiveEntity.class, pe.get(ID)));
+		assertNull(factory.load(PrimitiveEntity.class, pe.get(ID)));
+		assertEquals(0, db.getCollection(getCollectionName(PrimitiveEntity.class), Document.class).count());
+	}
+
+	private static interface Referencing extends Entity<Referencing> {
+		@Id
+		public String getName();
+
+		public Referencing setName(String name);
+
+		@Reference
+		public PrimitiveEntity getLazy();
+
+		public Referencing setLazy(PrimitiveEntity pe);
+
+		@Reference(lazy = false)
+		public PrimitiveEntity getEager();
+
+		public Referencing setEager(PrimitiveEntity pe);
+	}
+}
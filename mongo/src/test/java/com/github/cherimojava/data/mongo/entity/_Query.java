@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.CommonInterfaces.ComputedPropertyEntity;
+import com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import com.github.cherimojava.data.mongo.MongoBase;
+import com.github.cherimojava.data.mongo.entity.annotation.Id;
+import com.github.cherimojava.data.mongo.entity.annotation.Reference;
+import com.github.cherimojava.data.mongo.entity.annotation.Transient;
+import com.google.common.collect.Lists;
+
+public class _Query extends MongoBase {
+
+	EntityFactory factory;
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db);
+		List<Entity> persons = Lists.newArrayList();
+		for (int i = 0; i < 250; i++) {
+			persons.add(factory.create(Person.class).setName("person" + i).setAge(i % 50).setKind(
+					i % 2 == 0 ? Kind.EVEN : Kind.ODD));
+		}
+		factory.saveAll(persons);
+	}
+
+	@Test
+	public void filter() {
+		assertEquals(250, factory.query(Person.class).count());
+		assertEquals(5, factory.query(Person.class).eq("age", 10).count());
+		assertEquals(125, factory.query(Person.class).eq("kind", Kind.ODD).count());
+		assertEquals(245, factory.query(Person.class).ne("age", 10).count());
+		assertEquals(50, factory.query(Person.class).gte("age", 10).lt("age", 20).count());
+		assertEquals(25, factory.query(Person.class).gt("age", 10).lte("age", 20).eq("kind", Kind.EVEN).count());
+		assertEquals(15, factory.query(Person.class).in("age", Lists.newArrayList(1, 2, 3)).count());
+		assertEquals("person42", factory.query(Person.class).eq(Entity.ID, "person42").first().getName());
+		assertNull(factory.query(Person.class).eq(Entity.ID, "nobody").first());
+	}
+
+	@Test
+	public void sortSkipLimit() {
+		List<String> names = Lists.newArrayList();
+		try (EntityCursor<Person> cursor = factory.query(Person.class).eq("age", 3).descending(Entity.ID).skip(1).limit(
+				3).iterator()) {
+			while (cursor.hasNext()) {
+				names.add(cursor.next().getName());
+			}
+		}
+		assertEquals(Lists.newArrayList("person3", "person203", "person153"), names);
+
+		Person youngest = factory.query(Person.class).ascending("age").ascending(Entity.ID).first();
+		assertEquals("person0", youngest.getName());
+
+		Query<Person> query = factory.query(Person.class).eq("age", 3).ascending(Entity.ID);
+		assertEquals("person103", query.first().getName());
+		// first doesn't limit the query itself
+		try (Stream<Person> persons = query.stream()) {
+			assertEquals(5, persons.count());
+		}
+	}
+
+	@Test
+	public void validatesProperties() {
+		try {
+			factory.query(Person.class).eq("unknown", 1);
+			fail("should throw an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			factory.query(Person.class).ascending("transient");
+			fail("should throw an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			factory.query(Person.class).batchSize(0);
+			fail("should throw an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void cursor() {
+		int count = 0;
+		// more entities than decoded at once
+		try (EntityCursor<Person> cursor = factory.query(Person.class).iterator()) {
+			while (cursor.hasNext()) {
+				cursor.next();
+				count++;
+			}
+			try {
+				cursor.next();
+				fail("should throw an exception");
+			} catch (NoSuchElementException e) {
+				// expected
+			}
+		}
+		assertEquals(250, count);
+	}
+
+	@Test
+	public void stream() {
+		final AtomicBoolean closed = new AtomicBoolean(false);
+		try (Stream<Person> persons = factory.query(Person.class).eq("kind", Kind.EVEN).stream()) {
+			persons.onClose(new Runnable() {
+				@Override
+				public void run() {
+					closed.set(true);
+				}
+			});
+			assertEquals(125, persons.count());
+		}
+		assertTrue(closed.get());
+	}
+
+	@Test
+	public void references() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("referenced");
+		pe.save();
+		for (int i = 0; i < 10; i++) {
+			factory.create(Pet.class).setName("pet" + i).setOwner(i < 3 ? pe : null).save();
+		}
+
+		List<Pet> pets = Lists.newArrayList();
+		try (EntityCursor<Pet> cursor = factory.query(Pet.class).eq("owner", pe).iterator()) {
+			while (cursor.hasNext()) {
+				pets.add(cursor.next());
+			}
+		}
+		assertEquals(3, pets.size());
+		// owners of a batch are resolved together, so they share the instance
+		assertSame(pets.get(0).getOwner(), pets.get(1).getOwner());
+		assertEquals("referenced", pets.get(2).getOwner().getString());
+		assertFalse(factory.query(Pet.class).eq("owner", pe).ne(Entity.ID, "pet0").first().getName().equals("pet0"));
+	}
+
+	@Test
+	public void projection() {
+		List<Person> persons = Lists.newArrayList();
+		try (EntityCursor<Person> cursor = factory.query(Person.class).eq("age", 7).project(Projection.of("age"))
+				.iterator()) {
+			while (cursor.hasNext()) {
+				persons.add(cursor.next());
+			}
+		}
+		assertEquals(5, persons.size());
+		Person person = persons.get(0);
+		assertEquals(7, person.getAge());
+		assertNotNull(person.getName());
+		assertTrue(EntityInvocationHandler.getHandler(person).isPartial());
+		// accessing a property not loaded loads the remaining properties
+		assertNotNull(person.getKind());
+		assertFalse(EntityInvocationHandler.getHandler(person).isPartial());
+		assertEquals(7, person.getAge());
+	}
+
+	@Test
+	public void strictProjection() {
+		Person person = factory.load(Person.class, "person12", Projection.of("kind").strict());
+		assertEquals(Kind.EVEN, person.getKind());
+		assertEquals("person12", person.getName());
+		try {
+			person.getAge();
+			fail("should throw an exception");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("age"));
+		}
+		// set properties are known, even if not loaded
+		person.setAge(3);
+		assertEquals(3, person.getAge());
+		assertNull(factory.load(Person.class, "nobody", Projection.of("kind")));
+	}
+
+	@Test
+	public void strictProjectionAllowsTransientAndComputed() {
+		Person person = factory.load(Person.class, "person12", Projection.of("kind").strict());
+		// transient properties aren't stored, so there's nothing to load
+		assertNull(person.getTransient());
+		person.setTransient("t");
+		assertEquals("t", person.getTransient());
+
+		ComputedPropertyEntity cpe = factory.create(ComputedPropertyEntity.class);
+		cpe.setString("one").setInteger(1);
+		cpe.save();
+		ComputedPropertyEntity partial = factory.load(ComputedPropertyEntity.class, cpe.get(Entity.ID),
+				Projection.of("string", "Integer").strict());
+		assertEquals("one1", partial.getComputed());
+	}
+
+	@Test
+	public void projectionValidatesProperties() {
+		try {
+			factory.query(Person.class).project(Projection.of("unknown"));
+			fail("should throw an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void partialSave() {
+		Person person = factory.load(Person.class, "person13", Projection.of("age").strict());
+		assertFalse(person.save());
+		person.setAge(99).save();
+
+		Person read = factory.load(Person.class, "person13");
+		assertEquals(99, read.getAge());
+		// properties not loaded aren't overwritten
+		assertEquals(Kind.ODD, read.getKind());
+
+		Person partial = factory.load(Person.class, "person13", Projection.of("age"));
+		partial.setKind(null).save();
+		assertNull(factory.load(Person.class, "person13").getKind());
+		assertEquals(99, factory.load(Person.class, "person13").getAge());
+	}
+
+	private static enum Kind {
+		EVEN,
+		ODD
+	}
+
+	private static interface Person extends Entity<Person> {
+		@Id
+		public String getName();
+
+		public Person setName(String name);
+
+		public int getAge();
+
+		public Person setAge(int age);
+
+		public Kind getKind();
+
+		public Person setKind(Kind kind);
+
+		@Transient
+		public String getTransient();
+
+		public Person setTransient(String t);
+	}
+
+	private static interface Pet extends Entity<Pet> {
+		@Id
+		public String getName();
+
+		public Pet setName(String name);
+
+		@Reference(lazy = false)
+		public PrimitiveEntity getOwner();
+
+		public Pet setOwner(PrimitiveEntity owner);
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.entity;
+
+import static com.github.cherimojava.data.mongo.entity.EntityUtils.getCollectionName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+import javax.validation.metadata.BeanDescriptor;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.MongoBase;
+import com.github.cherimojava.data.mongo.entity.annotation.Id;
+import com.github.cherimojava.data.mongo.entity.annotation.Validate;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+
+public class _Validation extends MongoBase {
+
+	EntityFactory factory;
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db);
+	}
+
+	@Test
+	public void onSetByDefault() {
+		assertEquals(ValidationMode.ON_SET, factory.getValidationMode());
+		try {
+			factory.create(Account.class).setName("a");
+			fail("should throw an exception");
+		} catch (ConstraintViolationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void onSaveTrustsReads() {
+		db.getCollection(getCollectionName(Account.class)).insertOne(
+				new Document(Entity.ID, "xyz").append("age", 200).append("tags", Lists.newArrayList()));
+		try {
+			factory.load(Account.class, "xyz");
+			fail("should throw an exception");
+		} catch (ConstraintViolationException e) {
+			// expected
+		}
+
+		factory.setValidationMode(ValidationMode.ON_SAVE);
+		Account read = factory.load(Account.class, "xyz");
+		assertEquals(200, read.getAge());
+		read.setCode("invalid");
+		try {
+			read.save();
+			fail("should throw an exception");
+		} catch (ConstraintViolationException e) {
+			// expected
+		}
+		read.setAge(20).setCode("AB12").setTags(Lists.newArrayList("one"));
+		assertTrue(read.save());
+	}
+
+	@Test
+	public void noneChecksTypesOnly() {
+		factory.setValidationMode(ValidationMode.NONE);
+		Account account = factory.create(Account.class).setName("a").setAge(-1);
+		account.save();
+		assertNotNull(factory.load(Account.class, "a"));
+		try {
+			account.set("age", "old");
+			fail("should throw an exception");
+		} catch (ClassCastException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void classOverridesFactory() {
+		factory.setValidationMode(ValidationMode.ON_SET);
+		Trusted trusted = factory.create(Trusted.class).setName("");
+		assertTrue(trusted.save());
+	}
+
+	@Test
+	public void constraintsAreCompiled() {
+		BeanDescriptor descriptor = Validation.buildDefaultValidatorFactory().getValidator().getConstraintsForClass(
+				Account.class);
+		Predicate<Object> name = CompiledConstraints.compile(descriptor.getConstraintsForProperty("name"),
+				String.class);
+		assertFalse(name.apply(null));
+		assertFalse(name.apply("ab"));
+		assertTrue(name.apply("abc"));
+		assertFalse(name.apply("abcdefghijk"));
+
+		Predicate<Object> age = CompiledConstraints.compile(descriptor.getConstraintsForProperty("age"),
+				Integer.class);
+		assertTrue(age.apply(null));
+		assertFalse(age.apply(-1));
+		assertTrue(age.apply(0));
+		assertTrue(age.apply(150));
+		assertFalse(age.apply(151));
+
+		Predicate<Object> code = CompiledConstraints.compile(descriptor.getConstraintsForProperty("code"),
+				String.class);
+		assertTrue(code.apply("ab12"));
+		assertFalse(code.apply("ab123"));
+
+		Predicate<Object> tags = CompiledConstraints.compile(descriptor.getConstraintsForProperty("tags"),
+				List.class);
+		assertFalse(tags.apply(Lists.newArrayList()));
+		assertTrue(tags.apply(Lists.newArrayList("one")));
+
+		// constraints of other groups aren't validated at all
+		assertTrue(CompiledConstraints.compile(descriptor.getConstraintsForProperty("nick"), String.class).apply(
+				null));
+		// other constraints are left to the validator
+		assertNull(CompiledConstraints.compile(descriptor.getConstraintsForProperty("balance"), Double.class));
+	}
+
+	@Test
+	public void compiledConstraintsReportViolations() {
+		Account account = factory.create(Account.class).setName("valid").setAge(10);
+		try {
+			account.setAge(151);
+			fail("should throw an exception");
+		} catch (ConstraintViolationException e) {
+			assertEquals(1, e.getConstraintViolations().size());
+		}
+		try {
+			account.setBalance(-1d);
+			fail("should throw an exception");
+		} catch (ConstraintViolationException e) {
+			assertEquals(1, e.getConstraintViolations().size());
+		}
+		assertEquals(10, account.getAge());
+	}
+
+	@Test
+	public void saveRetriedAfterFailure() {
+		factory.setValidationMode(ValidationMode.ON_SAVE);
+		Account account = factory.create(Account.class).setName("retry").setAge(151);
+		try {
+			account.save();
+			fail("should throw an exception");
+		} catch (ConstraintViolationException e) {
+			// expected
+		}
+		assertTrue(account.setAge(20).save());
+		assertEquals(20, factory.load(Account.class, "retry").getAge());
+	}
+
+	private static interface Account extends Entity<Account> {
+		@Id
+		@NotNull(groups = Special.class)
+		@Size(min = 3, max = 10, groups = Special.class)
+		public String getName();
+
+		public Account setName(String name);
+
+		@Min(value = 0, groups = Special.class)
+		@Max(value = 150, groups = Special.class)
+		public int getAge();
+
+		public Account setAge(int age);
+
+		@Pattern(regexp = "[a-z]{2}[0-9]{2}", flags = Pattern.Flag.CASE_INSENSITIVE, groups = Special.class)
+		public String getCode();
+
+		public Account setCode(String code);
+
+		@Size(min = 1, groups = Special.class)
+		public List<String> getTags();
+
+		public Account setTags(List<String> tags);
+
+		@NotNull
+		public String getNick();
+
+		public Account setNick(String nick);
+
+		@DecimalMin(value = "0", groups = Special.class)
+		public Double getBalance();
+
+		public Account setBalance(Double balance);
+	}
+
+	@Validate(ValidationMode.NONE)
+	private static interface Trusted extends Entity<Trusted> {
+		@Id
+		@Size(min = 1, groups = Special.class)
+		public String getName();
+
+		public Trusted setName(String name);
+	}
+}
@@ -20,6 +20,7 @@ import static com.github.cherimojava.data.mongo.CommonInterfaces.ComputedPropert
 import static com.github.cherimojava.data.mongo.CommonInterfaces.EntityList;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.ExplicitIdEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.NestedEntity;
+import static com.github.cherimojava.data.mongo.CommonInterfaces.NumericEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
 import static com.github.cherimojava.data.mongo.CommonInterfaces.ReferencingEntity;
 import static com.github.cherimojava.data.mongo.entity.Entity.ID;
@@ -30,7 +31,9 @@ import static org.hamcrest.core.AllOf.allOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -39,8 +42,11 @@ import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
 import java.io.StringWriter;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.inject.Named;
+
 import com.github.cherimojava.data.mongo.CommonInterfaces;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.BsonDocument;
@@ -57,7 +63,11 @@ import org.junit.Test;
 import com.github.cherimojava.data.mongo.MongoBase;
 import com.github.cherimojava.data.mongo.entity.Entity;
 import com.github.cherimojava.data.mongo.entity.EntityFactory;
+import com.github.cherimojava.data.mongo.entity.EntityProperties;
 import com.github.cherimojava.data.mongo.entity.EntityUtils;
+import com.github.cherimojava.data.mongo.entity.ReferenceResolver;
+import com.github.cherimojava.data.mongo.entity.SaveResult;
+import com.github.cherimojava.data.mongo.entity.annotation.Collection;
 import com.github.cherimojava.data.mongo.entity.annotation.Final;
 import com.github.cherimojava.data.mongo.entity.annotation.Id;
 import com.github.cherimojava.data.mongo.entity.annotation.Reference;
@@ -65,6 +75,8 @@ import com.github.cherimojava.data.mongo.entity.annotation.Transient;
 import com.google.common.collect.Lists;
 import com.mongodb.Block;
 import com.mongodb.DBRef;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.UpdateOptions;
 
@@ -111,6 +123,42 @@ public class _DeEncoding extends MongoBase {
 		assertEquals(pe.getInteger(), read.getInteger());
 	}
 
+	@Test
+	public void primitiveDeEncoding() {
+		EntityCodec codec = new EntityCodec<>(db, EntityFactory.getProperties(CommonInterfaces.NumericEntity.class));
+
+		CommonInterfaces.NumericEntity ne = instantiate(CommonInterfaces.NumericEntity.class);
+		ne.setCount(-3).setTimestamp(Long.MAX_VALUE).setValue(1.5).setValid(true);
+
+		StringWriter swriter = new StringWriter();
+		JsonWriter jwriter = new JsonWriter(swriter);
+
+		codec.encode(jwriter, ne, null);
+
+		assertJson(sameJSONAs("{ \"count\" : -3, \"timestamp\" : { \"$numberLong\" : \"9223372036854775807\" }, "
+				+ "\"value\" : 1.5, \"valid\" : true }"), swriter);
+
+		CommonInterfaces.NumericEntity read = decode(codec, new JsonReader(swriter.toString()),
+				CommonInterfaces.NumericEntity.class);
+		assertEquals(-3, read.getCount());
+		assertEquals(Long.MAX_VALUE, read.getTimestamp());
+		assertEquals(1.5, read.getValue(), 0);
+		assertTrue(read.getValid());
+		assertEquals(ne, read);
+	}
+
+	@Test
+	public void primitiveDeEncodingDB() {
+		CommonInterfaces.NumericEntity ne = factory.create(CommonInterfaces.NumericEntity.class);
+		ne.setCount(42).setValue(-0.25).save();
+
+		CommonInterfaces.NumericEntity read = factory.load(CommonInterfaces.NumericEntity.class, ne.get(ID));
+		assertEquals(42, read.getCount());
+		assertEquals(-0.25, read.getValue(), 0);
+		assertNull(read.get("timestamp"));
+		assertEquals(ne, read);
+	}
+
 	@Test
 	public void basicDeEncodingDB() {
 		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
@@ -389,6 +437,107 @@ public class _DeEncoding extends MongoBase {
 		assertTrue(EntityUtils.isPersisted(read.getPE()));
 	}
 
+	@Test
+	public void saveOnlyIfModified() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+		pe.setString("some").setInteger(1);
+		assertTrue(pe.save());
+		assertFalse(pe.save());
+		pe.setString("some");// same value as before
+		assertFalse(pe.save());
+
+		PrimitiveEntity read = factory.load(PrimitiveEntity.class, pe.get(ID));
+		read.getString();
+		assertFalse(read.save());
+		read.setInteger(2);
+		assertTrue(read.save());
+		assertFalse(read.save());
+	}
+
+	@Test
+	public void saveOnlyModifiedProperties() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+		pe.setString("some").setInteger(1).save();
+		// change value behind the entities back, only modified values should be written
+		db.getCollection(getCollectionName(PrimitiveEntity.class)).updateOne(new Document(ID, pe.get(ID)),
+				new Document("$set", new Document("string", "external")));
+
+		pe.setInteger(2).save();
+		PrimitiveEntity read = factory.load(PrimitiveEntity.class, pe.get(ID));
+		assertEquals("external", read.getString());
+		assertEquals(2, (int) read.getInteger());
+
+		read.setInteger(null).save();
+		Document doc = db.getCollection(getCollectionName(PrimitiveEntity.class)).find(new Document(ID, pe.get(ID)))
+				.first();
+		assertEquals("external", doc.get("string"));
+		assertFalse(doc.containsKey("Integer"));
+	}
+
+	@Test
+	public void saveModifiedMutableValues() {
+		CollectionEntity ce = factory.create(CollectionEntity.class);
+		ce.setStrings(Lists.newArrayList("one"));
+		ce.save();
+
+		CollectionEntity read = factory.load(CollectionEntity.class, ce.get(ID));
+		read.getStrings().add("two");
+		assertTrue(read.save());
+		assertEquals(Lists.newArrayList("one", "two"), factory.load(CollectionEntity.class, ce.get(ID)).getStrings());
+
+		NestedEntity ne = factory.create(NestedEntity.class);
+		ne.setPE(factory.create(PrimitiveEntity.class).setString("inner"));
+		ne.save();
+		NestedEntity nread = factory.load(NestedEntity.class, ne.get(ID));
+		assertFalse(nread.save());
+		nread.getPE().setString("changed");
+		assertTrue(nread.save());
+		assertEquals("changed", factory.load(NestedEntity.class, ne.get(ID)).getPE().getString());
+	}
+
+	@Test
+	public void unknownFieldsAreSkipped() {
+		EntityCodec codec = new EntityCodec<>(db, EntityFactory.getProperties(NamedEmbedding.class));
+		JsonReader jreader = new JsonReader("{ \"unknown\": { \"nested\": [1, 2] }, "
+				+ "\"inner\": { \"string\": \"value\", \"other\": [{ \"a\": 1 }] }, \"more\": [\"x\"], "
+				+ "\"name\": \"outer\" }");
+		NamedEmbedding read = decode(codec, jreader, NamedEmbedding.class);
+		assertEquals("outer", read.getName());
+		assertEquals("value", read.getEmbedded().getString());
+		assertJson(sameJSONAs("{ \"name\": \"outer\", \"inner\": { \"string\": \"value\" } }"), read);
+	}
+
+	private static interface NamedEmbedding extends Entity<NamedEmbedding> {
+		public String getName();
+
+		public NamedEmbedding setName(String name);
+
+		@Named("inner")
+		public PrimitiveEntity getEmbedded();
+
+		public NamedEmbedding setEmbedded(PrimitiveEntity embedded);
+	}
+
+	@Test
+	public void embeddedEntitySavesParent() {
+		NestedEntity ne = factory.create(NestedEntity.class);
+		ne.setPE(factory.create(PrimitiveEntity.class).setString("inner"));
+		ne.save();
+		EntityList el = factory.create(EntityList.class).setId("list");
+		el.setList(Lists.newArrayList(factory.create(PrimitiveEntity.class).setString("one")));
+		el.save();
+
+		NestedEntity nread = factory.load(NestedEntity.class, ne.get(ID));
+		assertTrue(nread.getPE().setString("changed").save());
+		EntityList elread = factory.load(EntityList.class, "list");
+		assertTrue(elread.getList().get(0).setString("two").save());
+
+		// embedded entities are stored within their parent only
+		assertEquals(0, db.getCollection(getCollectionName(PrimitiveEntity.class)).count());
+		assertEquals("changed", factory.load(NestedEntity.class, ne.get(ID)).getPE().getString());
+		assertEquals("two", factory.load(EntityList.class, "list").getList().get(0).getString());
+	}
+
 	@Test
 	public void finalIsFinalAfterSave() throws NoSuchMethodException {
 		ExplicitIdEntity e = factory.create(ExplicitIdEntity.class);
@@ -506,6 +655,19 @@ public class _DeEncoding extends MongoBase {
 		assertEquals(1, count.get());
 	}
 
+	@Test
+	public void saveAgainAfterDrop() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("dropped");
+		pe.save();
+		pe.drop();
+		assertFalse(EntityUtils.isPersisted(pe));
+
+		assertTrue(pe.save());
+		PrimitiveEntity read = factory.load(PrimitiveEntity.class, pe.get(ID));
+		assertNotNull(read);
+		assertEquals("dropped", read.getString());
+	}
+
 	@Test
 	public void noFailOnSaveDropIfMongoGiven() {
 		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
@@ -680,6 +842,321 @@ public class _DeEncoding extends MongoBase {
 		one.save();// should work
 	}
 
+	@Test
+	public void saveUpsertsEntityWithId() {
+		ExplicitIdEntity e = factory.create(ExplicitIdEntity.class);
+		e.setName("upserted");
+		db.getCollection(getCollectionName(ExplicitIdEntity.class)).insertOne(
+				new Document(ID, "upserted").append("other", "kept"));
+
+		assertTrue(e.save());
+		Document doc = db.getCollection(getCollectionName(ExplicitIdEntity.class)).find(new Document(ID, "upserted"))
+				.first();
+		assertEquals("kept", doc.get("other"));
+		assertEquals(1, db.getCollection(getCollectionName(ExplicitIdEntity.class)).count());
+	}
+
+	@Test
+	public void saveInsertsIfNoUpsert() {
+		InsertOnlyEntity e = factory.create(InsertOnlyEntity.class);
+		e.setName("one").save();
+		assertEquals(e, factory.load(InsertOnlyEntity.class, "one"));
+
+		try {
+			factory.create(InsertOnlyEntity.class).setName("one").save();
+			fail("should throw an exception");
+		} catch (MongoWriteException ex) {
+			assertEquals(ErrorCategory.DUPLICATE_KEY, ErrorCategory.fromErrorCode(ex.getError().getCode()));
+		}
+	}
+
+	@Test
+	public void saveNewEntityWithoutProperties() {
+		NumericEntity ne = factory.create(NumericEntity.class);
+		assertTrue(ne.save());// new entities are stored even if nothing is set
+		assertFalse(ne.save());
+		assertEquals(1, db.getCollection(getCollectionName(NumericEntity.class)).count());
+	}
+
+	@Test
+	public void failedSaveCanBeRetried() {
+		db.getCollection(getCollectionName(InsertOnlyEntity.class)).insertOne(new Document(ID, "one"));
+		InsertOnlyEntity e = factory.create(InsertOnlyEntity.class).setName("one");
+		try {
+			e.save();
+			fail("should throw an exception");
+		} catch (MongoWriteException ex) {
+			assertEquals(ErrorCategory.DUPLICATE_KEY, ErrorCategory.fromErrorCode(ex.getError().getCode()));
+		}
+		assertFalse(EntityUtils.isPersisted(e));// failed write doesn't count as persisted
+
+		db.getCollection(getCollectionName(InsertOnlyEntity.class)).deleteOne(new Document(ID, "one"));
+		assertTrue(e.save());
+		assertTrue(EntityUtils.isPersisted(e));
+		assertEquals(e, factory.load(InsertOnlyEntity.class, "one"));
+	}
+
+	@Test
+	public void saveAllDB() {
+		PrimitiveEntity existing = factory.create(PrimitiveEntity.class);
+		existing.setString("existing").save();
+		existing.setInteger(5);
+		List<Entity> entities = Lists.<Entity> newArrayList(existing);
+		for (int i = 0; i < 10; i++) {
+			entities.add(factory.create(PrimitiveEntity.class).setString("new" + i));
+		}
+		entities.add(factory.create(InsertOnlyEntity.class).setName("one"));
+		entities.add(factory.create(InsertOnlyEntity.class).setName("one"));
+
+		SaveResult result = factory.saveAll(entities, false);
+		assertEquals(12, result.getCount(SaveResult.Outcome.SAVED));
+		assertEquals(SaveResult.Outcome.FAILED, result.getOutcome(12));
+		assertEquals(11, db.getCollection(getCollectionName(PrimitiveEntity.class)).count());
+		assertEquals(5, (int) factory.load(PrimitiveEntity.class, existing.get(ID)).getInteger());
+		assertEquals(SaveResult.Outcome.UNCHANGED, factory.saveAll(entities.subList(0, 11)).getOutcome(0));
+	}
+
+	@Test
+	public void saveAllLoadsLazyEntities() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("stored");
+		pe.save();
+
+		PrimitiveEntity lazy = factory.createLazy(PrimitiveEntity.class, pe.get(ID));
+		SaveResult result = factory.saveAll(Lists.<Entity> newArrayList(lazy));
+		assertEquals(SaveResult.Outcome.UNCHANGED, result.getOutcome(0));
+		assertEquals("stored", lazy.getString());
+		assertEquals("stored", factory.load(PrimitiveEntity.class, pe.get(ID)).getString());
+	}
+
+	@Test
+	public void saveAllAgainAfterPartialFailure() {
+		db.getCollection(getCollectionName(InsertOnlyEntity.class)).insertOne(new Document(ID, "two"));
+		List<Entity> entities = Lists.<Entity> newArrayList(factory.create(InsertOnlyEntity.class).setName("one"),
+				factory.create(InsertOnlyEntity.class).setName("two"),
+				factory.create(InsertOnlyEntity.class).setName("three"));
+
+		SaveResult result = factory.saveAll(entities, false);
+		assertEquals(SaveResult.Outcome.SAVED, result.getOutcome(0));
+		assertEquals(SaveResult.Outcome.FAILED, result.getOutcome(1));
+		assertEquals(SaveResult.Outcome.SAVED, result.getOutcome(2));
+		assertTrue(EntityUtils.isPersisted(entities.get(0)));
+		assertFalse(EntityUtils.isPersisted(entities.get(1)));// failed entity keeps its modifications
+
+		db.getCollection(getCollectionName(InsertOnlyEntity.class)).deleteOne(new Document(ID, "two"));
+		result = factory.saveAll(entities, false);
+		assertEquals(SaveResult.Outcome.UNCHANGED, result.getOutcome(0));
+		assertEquals(SaveResult.Outcome.SAVED, result.getOutcome(1));
+		assertEquals(SaveResult.Outcome.UNCHANGED, result.getOutcome(2));
+		assertEquals(3, db.getCollection(getCollectionName(InsertOnlyEntity.class)).count());
+	}
+
+	@Test
+	public void saveAllReportsVanishedEntities() {
+		PrimitiveEntity kept = factory.create(PrimitiveEntity.class).setString("kept");
+		PrimitiveEntity gone = factory.create(PrimitiveEntity.class).setString("gone");
+		factory.saveAll(Lists.<Entity> newArrayList(kept, gone));
+		db.getCollection(getCollectionName(PrimitiveEntity.class)).deleteOne(new Document(ID, gone.get(ID)));
+
+		kept.setString("kept again");
+		gone.setString("gone again");
+		SaveResult result = factory.saveAll(Lists.<Entity> newArrayList(kept, gone), false);
+		assertEquals(SaveResult.Outcome.SAVED, result.getOutcome(0));
+		assertEquals(SaveResult.Outcome.NOT_FOUND, result.getOutcome(1));
+		assertFalse(result.isSuccessful());
+		assertEquals(1, db.getCollection(getCollectionName(PrimitiveEntity.class)).count());
+		// vanished entity keeps its modifications and still isn't inserted again
+		result = factory.saveAll(Lists.<Entity> newArrayList(kept, gone), false);
+		assertEquals(SaveResult.Outcome.UNCHANGED, result.getOutcome(0));
+		assertEquals(SaveResult.Outcome.NOT_FOUND, result.getOutcome(1));
+		assertEquals(1, db.getCollection(getCollectionName(PrimitiveEntity.class)).count());
+	}
+
+	@Test
+	public void loadAll() {
+		List<Entity> entities = Lists.newArrayList();
+		List<Object> ids = Lists.newArrayList();
+		for (int i = 0; i < 1010; i++) {
+			ExplicitIdEntity e = factory.create(ExplicitIdEntity.class).setName("id" + i);
+			entities.add(e);
+			ids.add(0, e.get(ID));// load in reversed order
+		}
+		factory.saveAll(entities);
+		ids.add(500, "missing");
+
+		Map<Object, ExplicitIdEntity> loaded = factory.loadAll(ExplicitIdEntity.class, ids);
+		assertEquals(ids, Lists.newArrayList(loaded.keySet()));
+		assertNull(loaded.get("missing"));
+		assertEquals("id0", loaded.get("id0").getName());
+		assertEquals(entities.get(1009), loaded.get("id1009"));
+		assertTrue(factory.loadAll(ExplicitIdEntity.class, Lists.newArrayList()).isEmpty());
+	}
+
+	@Test
+	public void eagerReferencesResolvedTogether() {
+		List<PrimitiveEntity> referenced = Lists.newArrayList();
+		for (int i = 0; i < 3; i++) {
+			PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("ref" + i);
+			pe.save();
+			referenced.add(pe);
+		}
+		PrimitiveEntity missing = factory.create(PrimitiveEntity.class).setString("missing");
+		missing.set(ID, new ObjectId());
+
+		List<Object> ids = Lists.newArrayList();
+		for (int i = 0; i < 10; i++) {
+			EagerEntity e = factory.create(EagerEntity.class).setName("eager" + i).setPE(referenced.get(i % 3));
+			e.setPEs(Lists.newArrayList(referenced.get(0), i == 0 ? missing : referenced.get(2)));
+			e.save();
+			ids.add(e.getName());
+		}
+
+		Map<Object, EagerEntity> loaded = factory.loadAll(EagerEntity.class, ids);
+		// references are already resolved, so they don't need to be loaded anymore
+		db.getCollection(getCollectionName(PrimitiveEntity.class)).drop();
+		assertEquals("ref1", loaded.get("eager4").getPE().getString());
+		assertEquals("ref2", loaded.get("eager5").getPEs().get(1).getString());
+		// same reference is resolved only once
+		assertSame(loaded.get("eager0").getPE(), loaded.get("eager3").getPE());
+		assertSame(loaded.get("eager0").getPE(), loaded.get("eager0").getPEs().get(0));
+		// references to not existing entities contain only their id
+		PrimitiveEntity notFound = loaded.get("eager0").getPEs().get(1);
+		assertEquals(missing.get(ID), notFound.get(ID));
+		assertNull(notFound.getString());
+	}
+
+	@Test
+	public void eagerReferenceResolvedOnSingleLoad() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("ref");
+		pe.save();
+		factory.create(EagerEntity.class).setName("eager").setPE(pe).save();
+
+		EagerEntity read = factory.load(EagerEntity.class, "eager");
+		db.getCollection(getCollectionName(PrimitiveEntity.class)).drop();
+		assertEquals("ref", read.getPE().getString());
+		assertNull(read.getPEs());
+	}
+
+	@Test
+	public void referencesNotResolvedIfScopeFails() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class).setString("ref");
+		pe.save();
+
+		PrimitiveEntity ref;
+		try (ReferenceResolver resolver = ReferenceResolver.open(factory)) {
+			ref = resolver.reference(PrimitiveEntity.class, pe.get(ID));
+			// scope isn't completed, like if decoding failed
+		}
+		db.getCollection(getCollectionName(PrimitiveEntity.class)).drop();
+		assertNull(ref.getString());// still lazy, so loaded only now
+	}
+
+	@Test
+	public void referenceScopesBoundToFactory() {
+		EntityFactory other = new EntityFactory(db);
+		try (ReferenceResolver resolver = ReferenceResolver.open(factory);
+				ReferenceResolver otherResolver = ReferenceResolver.open(other)) {
+			assertSame(resolver, ReferenceResolver.current(factory));
+			assertSame(otherResolver, ReferenceResolver.current(other));
+			assertNotSame(resolver, otherResolver);
+			otherResolver.complete();
+			resolver.complete();
+		}
+	}
+
+	@Test
+	public void lazyDecodingDecodesOnAccess() {
+		factory.create(LazyEntity.class).setName("lazy").setCount(4).setTags(Lists.newArrayList("a", "b")).setPE(
+				factory.create(PrimitiveEntity.class).setString("nested")).save();
+		EntityProperties props = EntityFactory.getProperties(LazyEntity.class);
+
+		LazyEntity read = factory.load(LazyEntity.class, "lazy");
+		assertNotNull(EntityUtils.getRawDocument(read));
+		assertTrue(EntityUtils.isDecoded(read, props.getProperty(ID)));
+		assertFalse(EntityUtils.isDecoded(read, props.getProperty("count")));
+		assertFalse(EntityUtils.isDecoded(read, props.getProperty("tags")));
+		assertFalse(EntityUtils.isDecoded(read, props.getProperty("PE")));
+
+		assertEquals(4, read.getCount());
+		assertTrue(EntityUtils.isDecoded(read, props.getProperty("count")));
+		assertFalse(EntityUtils.isDecoded(read, props.getProperty("tags")));
+		assertEquals(Lists.newArrayList("a", "b"), read.getTags());
+		assertEquals("nested", read.getPE().getString());
+	}
+
+	@Test
+	public void lazyDecodingKeepsUnknownFields() {
+		db.getCollection(getCollectionName(LazyEntity.class)).insertOne(
+				new Document(ID, "lazy").append("count", 2).append("tags", Lists.newArrayList("x")).append("legacy",
+						"keep").append("nested", new Document("a", 1).append("b", Lists.newArrayList("y"))));
+		EntityProperties props = EntityFactory.getProperties(LazyEntity.class);
+
+		LazyEntity read = factory.load(LazyEntity.class, "lazy");
+		assertJson(sameJSONAs("{ \"_id\": \"lazy\", \"count\": 2, \"tags\": [\"x\"], \"legacy\": \"keep\", "
+				+ "\"nested\": { \"a\": 1, \"b\": [\"y\"] } }"), read);
+		// writing the entity doesn't decode it
+		assertFalse(EntityUtils.isDecoded(read, props.getProperty("tags")));
+
+		read.setCount(3).save();
+		Document stored = db.getCollection(getCollectionName(LazyEntity.class)).find().first();
+		assertEquals(3, stored.get("count"));
+		assertEquals("keep", stored.get("legacy"));
+		assertEquals(Lists.newArrayList("x"), stored.get("tags"));
+
+		// entity written as a whole still contains the fields it never decoded
+		db.getCollection(getCollectionName(LazyEntity.class)).drop();
+		read.setCount(5).save();
+		stored = db.getCollection(getCollectionName(LazyEntity.class)).find().first();
+		assertEquals(5, stored.get("count"));
+		assertEquals("keep", stored.get("legacy"));
+		assertEquals(Lists.newArrayList("x"), stored.get("tags"));
+		assertEquals(new Document("a", 1).append("b", Lists.newArrayList("y")), stored.get("nested"));
+	}
+
+	@Collection(lazyDecoding = true)
+	private static interface LazyEntity extends Entity<LazyEntity> {
+		@Id
+		public String getName();
+
+		public LazyEntity setName(String name);
+
+		public int getCount();
+
+		public LazyEntity setCount(int count);
+
+		public List<String> getTags();
+
+		public LazyEntity setTags(List<String> tags);
+
+		public PrimitiveEntity getPE();
+
+		public LazyEntity setPE(PrimitiveEntity pe);
+	}
+
+	private static interface EagerEntity extends Entity<EagerEntity> {
+		@Id
+		public String getName();
+
+		public EagerEntity setName(String name);
+
+		@Reference(lazy = false)
+		public PrimitiveEntity getPE();
+
+		public EagerEntity setPE(PrimitiveEntity pe);
+
+		@Reference(lazy = false)
+		public List<PrimitiveEntity> getPEs();
+
+		public EagerEntity setPEs(List<PrimitiveEntity> pes);
+	}
+
+	@Collection(upsert = false)
+	private static interface InsertOnlyEntity extends Entity<InsertOnlyEntity> {
+		@Id
+		public String getName();
+
+		public InsertOnlyEntity setName(String name);
+	}
+
 	private static interface ThingOne extends Entity<ThingOne> {
 		@Reference
 		public ThingTwo getOther();
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import static com.github.cherimojava.data.mongo.entity.Entity.ID;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.CommonInterfaces.LazyLoadingEntity;
+import com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import com.github.cherimojava.data.mongo.MongoBase;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+
+public class _EntityMetrics extends MongoBase {
+
+	EntityFactory factory;
+
+	EntityMetrics metrics;
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db);
+		metrics = factory.enableMetrics();
+	}
+
+	@After
+	public void tearDown() {
+		factory.disableMetrics();
+	}
+
+	@Test
+	public void operationsAreRecorded() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+		pe.setString("some").setInteger(1);
+		pe.save();
+		pe.setInteger(2);
+		pe.save();
+		assertNotNull(factory.load(PrimitiveEntity.class, pe.get(ID)));
+		pe.drop();
+
+		assertEquals(2, count(PrimitiveEntity.class, Operation.SAVE));
+		assertEquals(1, count(PrimitiveEntity.class, Operation.INSERT));
+		assertEquals(1, count(PrimitiveEntity.class, Operation.UPDATE));
+		assertEquals(1, count(PrimitiveEntity.class, Operation.LOAD));
+		assertEquals(1, count(PrimitiveEntity.class, Operation.DROP));
+		assertThat(count(PrimitiveEntity.class, Operation.VALIDATE), greaterThan(0L));
+		assertThat(count(PrimitiveEntity.class, Operation.DECODE), greaterThan(0L));
+
+		OperationStatistics encode = metrics.getStatistics(PrimitiveEntity.class, Operation.ENCODE);
+		assertEquals(1, encode.getCount());
+		assertEquals(1, encode.getDocuments());
+		assertThat(encode.getMaxSize(), greaterThan(0L));
+		OperationStatistics decode = metrics.getStatistics(PrimitiveEntity.class, Operation.DECODE);
+		assertThat(decode.getDocuments(), greaterThan(0L));
+		assertThat(decode.getP50Size(), greaterThan(0L));
+		assertNull(metrics.getStatistics(PrimitiveEntity.class, Operation.BULK_WRITE));
+	}
+
+	@Test
+	public void lazyLoadsAreRecorded() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+		pe.setString("referenced").save();
+		LazyLoadingEntity lazy = factory.create(LazyLoadingEntity.class);
+		lazy.setPE(pe).setString("referencing");
+		lazy.save();
+
+		LazyLoadingEntity loaded = factory.load(LazyLoadingEntity.class, lazy.get(ID));
+		assertEquals(0, count(PrimitiveEntity.class, Operation.LAZY_LOAD));
+		assertEquals("referenced", loaded.getPE().getString());
+		assertEquals(1, count(PrimitiveEntity.class, Operation.LAZY_LOAD));
+	}
+
+	@Test
+	public void settingSameReferenceDoesNotLoadIt() {
+		PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+		pe.setString("referenced").save();
+		LazyLoadingEntity lazy = factory.create(LazyLoadingEntity.class);
+		lazy.setPE(pe).setString("referencing");
+		lazy.save();
+
+		LazyLoadingEntity loaded = factory.load(LazyLoadingEntity.class, lazy.get(ID));
+		loaded.setPE(pe);
+		assertEquals(0, count(PrimitiveEntity.class, Operation.LAZY_LOAD));
+		assertEquals(0, count(LazyLoadingEntity.class, Operation.UPDATE));
+		loaded.save();// reference is unchanged, so there's nothing to write
+		assertEquals(0, count(LazyLoadingEntity.class, Operation.UPDATE));
+	}
+
+	@Test
+	public void metricsAreExposedThroughJmx() throws Exception {
+		factory.create(PrimitiveEntity.class).setString("jmx").save();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = metrics.getObjectName();
+		assertTrue(server.isRegistered(name));
+		assertEquals(EntityMetrics.DOMAIN, name.getDomain());
+		assertTrue(((String[]) server.getAttribute(name, "EntityClasses"))[0].contains("PrimitiveEntity"));
+		assertThat(((Object[]) server.getAttribute(name, "Statistics")).length, greaterThan(0));
+
+		server.invoke(name, "reset", null, null);
+		assertEquals(0, metrics.getStatistics().size());
+
+		assertSame(metrics, factory.enableMetrics());
+		factory.disableMetrics();
+		assertFalse(server.isRegistered(name));
+		assertSame(Instrumentation.NONE, factory.getInstrumentation());
+	}
+
+	@Test
+	public void histogramPercentiles() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		histogram.record(10000);
+		assertEquals(101, histogram.getCount());
+		assertEquals(10000, histogram.getMax());
+		// 50th value is 50, reported as upper bound of its bucket [32, 63]
+		assertEquals(63, histogram.getValueAtPercentile(50));
+		assertEquals(127, histogram.getValueAtPercentile(99));
+		assertEquals(10000, histogram.getValueAtPercentile(100));
+	}
+
+	private long count(Class clazz, Operation operation) {
+		OperationStatistics statistics = metrics.getStatistics(clazz, operation);
+		return statistics == null ? 0 : statistics.getCount();
+	}
+}
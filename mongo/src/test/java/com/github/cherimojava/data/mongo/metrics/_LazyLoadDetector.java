@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2013 cherimojava (http://github.com/cherimojava/cherimodata)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cherimojava.data.mongo.metrics;
+
+import static com.github.cherimojava.data.mongo.entity.Entity.ID;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.cherimojava.data.mongo.CommonInterfaces.LazyLoadingEntity;
+import com.github.cherimojava.data.mongo.CommonInterfaces.PrimitiveEntity;
+import com.github.cherimojava.data.mongo.MongoBase;
+import com.github.cherimojava.data.mongo.entity.EntityFactory;
+import com.github.cherimojava.data.mongo.metrics.LazyLoadDetector.Reaction;
+import com.github.cherimojava.data.mongo.metrics.LazyLoadDetector.Scope;
+import com.google.common.collect.Lists;
+
+public class _LazyLoadDetector extends MongoBase {
+
+	EntityFactory factory;
+
+	List<Object> ids;
+
+	@Before
+	public void setup() {
+		factory = new EntityFactory(db);
+		ids = Lists.newArrayList();
+		for (int i = 0; i < 5; i++) {
+			PrimitiveEntity pe = factory.create(PrimitiveEntity.class);
+			pe.setString("referenced" + i).save();
+			LazyLoadingEntity lazy = factory.create(LazyLoadingEntity.class);
+			lazy.setPE(pe).setString("referencing" + i);
+			lazy.save();
+			ids.add(lazy.get(ID));
+		}
+	}
+
+	@Test
+	public void stormFailsAtAccessSite() {
+		EntityMetrics metrics = new EntityMetrics();
+		LazyLoadDetector detector = new LazyLoadDetector(3, Reaction.FAIL, metrics);
+		factory.setInstrumentation(detector);
+		List<LazyLoadingEntity> lazies = Lists.newArrayList(factory.loadAll(LazyLoadingEntity.class, ids).values());
+		try (Scope scope = detector.open("storm")) {
+			for (int i = 0; i < 3; i++) {
+				lazies.get(i).getPE().getString();
+			}
+			assertEquals(3, scope.getCount(PrimitiveEntity.class));
+			try {
+				lazies.get(3).getPE().getString();
+				fail("should throw an exception");
+			} catch (IllegalStateException e) {
+				assertThat(e.getMessage(), containsString(PrimitiveEntity.class.getName()));
+				assertThat(e.getMessage(), containsString("'storm'"));
+				// the stack sample leads to the access site
+				assertTrue(containsAccessSite(e, "stormFailsAtAccessSite"));
+			}
+			// the access failed before querying
+			assertEquals(3, metrics.getStatistics(PrimitiveEntity.class, Operation.LAZY_LOAD).getCount());
+		}
+		assertNull(detector.current());
+		// outside of the scope the failed access works
+		assertEquals("referenced3", lazies.get(3).getPE().getString());
+	}
+
+	@Test
+	public void stormIsLoggedOnce() {
+		EntityMetrics metrics = new EntityMetrics();
+		factory.setInstrumentation(new LazyLoadDetector(2, Reaction.LOG, metrics));
+		LazyLoadDetector detector = (LazyLoadDetector) factory.getInstrumentation();
+		try (Scope scope = detector.open("loop")) {
+			for (Object id : ids) {
+				factory.load(LazyLoadingEntity.class, id).getPE().getString();
+			}
+			assertEquals(5, scope.getCount(LazyLoadingEntity.class));
+			assertEquals(5, scope.getCount(PrimitiveEntity.class));
+		}
+		// operations are passed on to the delegate
+		assertEquals(5, metrics.getStatistics(PrimitiveEntity.class, Operation.LAZY_LOAD).getCount());
+	}
+
+	@Test
+	public void onlyScopesAreTracked() {
+		LazyLoadDetector detector = new LazyLoadDetector(1, Reaction.FAIL);
+		factory.setInstrumentation(detector);
+		for (Object id : ids) {
+			factory.load(LazyLoadingEntity.class, id).getPE().getString();
+		}
+		try (Scope outer = detector.open("outer")) {
+			factory.load(LazyLoadingEntity.class, ids.get(0));
+			try (Scope inner = detector.open("inner")) {
+				assertSame(outer, inner);
+				assertEquals(1, inner.getCount(LazyLoadingEntity.class));
+			}
+			assertSame(outer, detector.current());
+		}
+		assertNull(detector.current());
+	}
+
+	/**
+	 * checks if the stack of the given exception contains the given method of this test
+	 */
+	private static boolean containsAccessSite(Throwable t, String method) {
+		for (StackTraceElement element : t.getStackTrace()) {
+			if (_LazyLoadDetector.class.getName().equals(element.getClassName())
+					&& method.equals(element.getMethodName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}